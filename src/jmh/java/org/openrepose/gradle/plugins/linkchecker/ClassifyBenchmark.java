@@ -0,0 +1,95 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.apache.commons.validator.routines.UrlValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how links are classified: as a URL or a local file, and then whether a URL's host is ignored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    private static final UrlValidator URL_VALIDATOR = new UrlValidator(UrlValidator.ALLOW_LOCAL_URLS);
+
+    private static final String[] LINKS = {
+            "https://www.example.com/docs/index.html",
+            "http://sso.corp42.example.net/login?next=/",
+            "../d12/p1234.html#top",
+            "/home/build/docs/d3/p300.html",
+            "https://github.com/rackerlabs/gradle-linkchecker-plugin",
+            "images/logo.png",
+    };
+
+    private static final String[] HOSTS = {
+            "www.example.com", "sso.corp42.example.net", "github.com", "docs-7.internal", "plugins.gradle.org",
+    };
+
+    /**
+     * The number of ignored host expressions.
+     */
+    @Param({"10", "200"})
+    public int ignoreHostRegexs;
+
+    private HostMatcher hostMatcher;
+    private List<String> regexs;
+
+    @Setup
+    public void setUp() {
+        regexs = new ArrayList<>();
+        for (int i = 0; i < ignoreHostRegexs; i++) {
+            switch (i % 3) {
+                case 0:
+                    regexs.add(".*\\.corp" + i + "\\.example\\.net");
+                    break;
+                case 1:
+                    regexs.add("sso" + i + "\\.example\\.com");
+                    break;
+                default:
+                    regexs.add("docs-" + i + "-\\d+\\.internal");
+                    break;
+            }
+        }
+        hostMatcher = new HostMatcher(regexs);
+    }
+
+    @Benchmark
+    public void isValidUrl(Blackhole blackhole) {
+        for (String link : LINKS) {
+            blackhole.consume(URL_VALIDATOR.isValid(link));
+        }
+    }
+
+    @Benchmark
+    public void hostMatcher(Blackhole blackhole) {
+        for (String host : HOSTS) {
+            blackhole.consume(hostMatcher.matches(host));
+        }
+    }
+
+    /**
+     * How ignored hosts were matched before {@link HostMatcher}, for comparison.
+     */
+    @Benchmark
+    public void stringMatches(Blackhole blackhole) {
+        for (String host : HOSTS) {
+            boolean ignored = false;
+            for (String regex : regexs) {
+                if (host.matches(regex)) {
+                    ignored = true;
+                    break;
+                }
+            }
+            blackhole.consume(ignored);
+        }
+    }
+}
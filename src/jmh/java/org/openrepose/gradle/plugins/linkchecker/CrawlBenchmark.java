@@ -0,0 +1,58 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole crawl of a local site, end to end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int pages;
+
+    @Param({"5", "50"})
+    public int fanOut;
+
+    @Param({LinkExtractor.JSOUP, LinkExtractor.STREAMING})
+    public String linkExtractor;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private File root;
+    private File startFile;
+    private LinkCheckerSettings settings;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        root = Files.createTempDirectory("linkchecker-crawl").toFile();
+        startFile = DocTreeGenerator.generate(root, pages, fanOut);
+        settings = new LinkCheckerSettings();
+        settings.linkExtractor = linkExtractor;
+        settings.parallelism = parallelism;
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        DocTreeGenerator.delete(root);
+    }
+
+    @Benchmark
+    public int crawl() throws IOException {
+        List<String> badLinks = new ArrayList<>();
+        return LinkChecker.checkLinks(null, startFile, settings, null, badLinks);
+    }
+}
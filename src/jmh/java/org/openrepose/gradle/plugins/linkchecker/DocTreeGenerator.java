@@ -0,0 +1,97 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates synthetic documentation sites to benchmark against.
+ * <p>
+ * Pages are spread over directories of 100, like generated API docs, and every page is reachable from
+ * {@code index.html}. Each page links to the next page (so the whole tree is crawled), plus {@code fanOut} other
+ * pages chosen at random, an image, and optionally some external URLs. The same arguments always generate the same
+ * site.
+ */
+final class DocTreeGenerator {
+
+    private static final int PAGES_PER_DIRECTORY = 100;
+
+    private DocTreeGenerator() {
+        // This class should not be instantiated.
+    }
+
+    /**
+     * @param root         the directory to generate the site in
+     * @param pages        the number of pages
+     * @param fanOut       the number of extra links from each page to other pages
+     * @param externalUrls the base URLs to link to from each page; may be empty
+     * @return the start file of the site
+     */
+    static File generate(File root, int pages, int fanOut, String... externalUrls) throws IOException {
+        Random random = new Random(pages * 31L + fanOut);
+        Files.createDirectories(root.toPath().resolve("images"));
+        Files.write(root.toPath().resolve("images/logo.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+        for (int page = 0; page < pages; page++) {
+            Path path = root.toPath().resolve(pagePath(page));
+            Files.createDirectories(path.getParent());
+            Files.write(path, page(page, pages, fanOut, random, externalUrls).getBytes(StandardCharsets.UTF_8));
+        }
+        return root.toPath().resolve(pagePath(0)).toFile();
+    }
+
+    /**
+     * @return a single page like those in the generated sites
+     */
+    static String page(int fanOut, String... externalUrls) {
+        return page(1, 1000, fanOut, new Random(fanOut), externalUrls);
+    }
+
+    private static String page(int page, int pages, int fanOut, Random random, String... externalUrls) {
+        StringBuilder html = new StringBuilder(1024 + fanOut * 128);
+        html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<title>Page ").append(page).append("</title>\n")
+                .append("<script>var page = ").append(page).append(";</script>\n</head>\n<body>\n")
+                .append("<!-- generated page ").append(page).append(" -->\n")
+                .append("<h1 id=\"top\">Page ").append(page).append("</h1>\n")
+                .append("<img src=\"").append(relative(page, "images/logo.png")).append("\" alt=\"logo\"/>\n<ul>\n");
+        if (page + 1 < pages) {
+            link(html, relative(page, pagePath(page + 1)));
+        }
+        for (int i = 0; i < fanOut; i++) {
+            link(html, relative(page, pagePath(random.nextInt(pages))) + (i % 3 == 0 ? "#top" : ""));
+        }
+        for (String externalUrl : externalUrls) {
+            link(html, externalUrl + "/page/" + random.nextInt(pages));
+        }
+        html.append("</ul>\n<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.</p>\n")
+                .append("</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private static void link(StringBuilder html, String href) {
+        html.append("<li><a href=\"").append(href).append("\" title=\"link\">").append(href).append("</a></li>\n");
+    }
+
+    private static String pagePath(int page) {
+        return page == 0 ? "index.html" : "d" + page / PAGES_PER_DIRECTORY + "/p" + page + ".html";
+    }
+
+    private static String relative(int fromPage, String path) {
+        return fromPage == 0 ? path : "../" + path;
+    }
+
+    /**
+     * Deletes a generated site.
+     */
+    static void delete(File root) throws IOException {
+        if (root != null && root.exists()) {
+            try (Stream<Path> paths = Files.walk(root.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly links are extracted from a single page, which is the bulk of the work done for each local file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int fanOut;
+
+    @Param({LinkExtractor.JSOUP, LinkExtractor.STREAMING})
+    public String linkExtractor;
+
+    private String html;
+    private LinkExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        html = DocTreeGenerator.page(fanOut, "https://www.example.com");
+        Map<String, String> elementsToAttributes = new HashMap<>();
+        elementsToAttributes.put("a", "href");
+        elementsToAttributes.put("frame", "src");
+        elementsToAttributes.put("img", "src");
+        extractor = LinkExtractor.forEngine(linkExtractor, elementsToAttributes);
+    }
+
+    @Benchmark
+    public void extract(Blackhole blackhole) {
+        extractor.extract(html, (element, attribute, value) -> blackhole.consume(value));
+    }
+}
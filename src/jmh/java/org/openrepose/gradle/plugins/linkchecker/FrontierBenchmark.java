@@ -0,0 +1,51 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of scheduling and de-duplicating links, as happens once for every link found in every page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrontierBenchmark {
+
+    /**
+     * The number of distinct links.
+     */
+    @Param({"10000", "100000"})
+    public int links;
+
+    /**
+     * The average number of times each link is found.
+     */
+    @Param({"10", "25"})
+    public int repeats;
+
+    private String[] occurrences;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(links);
+        occurrences = new String[links * repeats];
+        for (int i = 0; i < occurrences.length; i++) {
+            int page = i < links ? i : random.nextInt(links);
+            occurrences[i] = "/docs/api/d" + page / 100 + "/p" + page + ".html";
+        }
+    }
+
+    @Benchmark
+    public int offer() {
+        CrawlFrontier frontier = new CrawlFrontier();
+        for (String link : occurrences) {
+            frontier.offer(link);
+        }
+        return frontier.size();
+    }
+}
@@ -0,0 +1,89 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking a batch of URLs against a stub server in this JVM, which responds after a fixed delay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UrlCheckBenchmark {
+
+    @Param({"200"})
+    public int urls;
+
+    /**
+     * How long the stub server takes to respond, in milliseconds.
+     */
+    @Param({"0", "20"})
+    public int latency;
+
+    @Param({"1", "16"})
+    public int maxConcurrentUrlChecks;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String baseUrl;
+    private LinkCheckerSettings settings;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        settings = new LinkCheckerSettings();
+        settings.httpURLConnectionTimeout = 5000;
+        settings.maxConcurrentUrlChecks = maxConcurrentUrlChecks;
+        settings.maxConcurrentUrlChecksPerHost = maxConcurrentUrlChecks;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int check() throws ExecutionException, InterruptedException {
+        int good = 0;
+        try (UrlChecker checker = new UrlChecker(settings)) {
+            List<Future<UrlCheckResult>> results = new ArrayList<>(urls);
+            for (int i = 0; i < urls; i++) {
+                results.add(checker.submit(baseUrl + "/page/" + i));
+            }
+            for (Future<UrlCheckResult> result : results) {
+                if (result.get().isGood()) {
+                    good++;
+                }
+            }
+        }
+        return good;
+    }
+}
@@ -0,0 +1,71 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The anchors of each local HTML page that has been read, i.e. the targets that a fragment can point to.
+ * <p>
+ * Each page is added once, with the anchors collected while its links were extracted, so checking a fragment never
+ * means reading the page again, and is a hash lookup however many links point into the page. Pages can be added from
+ * several roots at once.
+ */
+class AnchorIndex {
+
+    private static final String[] HTML_EXTENSIONS = {".html", ".htm", ".xhtml", ".shtml"};
+
+    private final Map<String, Set<String>> anchorsByPage = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a page, if it is HTML; fragments of other kinds of files (e.g. {@code #page=2} of a PDF) are not checked.
+     *
+     * @param page     the link that the page was reached by
+     * @param fileName the name of the file that was read for the page
+     * @param anchors  the anchors in the page
+     */
+    void add(String page, String fileName, Set<String> anchors) {
+        String lowerCaseName = fileName.toLowerCase(Locale.ENGLISH);
+        for (String extension : HTML_EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) {
+                anchorsByPage.put(page, anchors.isEmpty() ? Collections.emptySet() : anchors);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the page has been added as HTML
+     */
+    boolean isIndexed(String page) {
+        return anchorsByPage.containsKey(page);
+    }
+
+    /**
+     * @param page     the link of the page that the fragment points into
+     * @param fragment the fragment, without the leading {@code #}
+     * @return true if the page has been read and has no anchor for the fragment; false if it does, or if the page is
+     * missing or not HTML, in which case there is nothing to say about the fragment
+     */
+    boolean isMissing(String page, String fragment) {
+        Set<String> anchors = anchorsByPage.get(page);
+        if (anchors == null || anchors.contains(fragment) || "top".equalsIgnoreCase(fragment)) {
+            // browsers scroll to the top of the page for #top when there is no such anchor
+            return false;
+        }
+        return fragment.indexOf('%') < 0 || !anchors.contains(percentDecode(fragment));
+    }
+
+    private static String percentDecode(String fragment) {
+        try {
+            // '+' is not a space in a fragment
+            return URLDecoder.decode(fragment.replace("+", "%2B"), "UTF-8");
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            return fragment;
+        }
+    }
+}
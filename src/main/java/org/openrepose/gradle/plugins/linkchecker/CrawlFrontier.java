@@ -0,0 +1,185 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * The links that are still waiting to be checked, along with every link that has ever been scheduled.
+ * <p>
+ * Links are expected to already be normalized (i.e. canonical file paths or URLs) so that each distinct target is
+ * only ever enqueued once; both scheduling and de-duplication are constant time.
+ * <p>
+ * When several roots are crawled at once, their frontiers can share a set of claimed links, so that each link is only
+ * scheduled by whichever frontier reaches it first.
+ * <p>
+ * Links can also be given a priority, in which case they are checked in order of priority, and in discovery order
+ * within each priority.
+ */
+class CrawlFrontier {
+
+    /**
+     * Links are checked in the order they are found.
+     */
+    static final String DISCOVERY_ORDER = "discovery";
+
+    /**
+     * Local files that have changed since the last run are checked first, then other local files, and URLs last.
+     * The link checker starts checking URLs as soon as they are found, so for them this only decides when their results
+     * are taken.
+     */
+    static final String PRIORITY_ORDER = "priority";
+
+    /**
+     * The priority, in priority order, of a local file that has changed since the last run, or that is not known.
+     */
+    static final int CHANGED_FILE = 0;
+
+    /**
+     * The priority, in priority order, of a local file that has not changed since the last run.
+     */
+    static final int UNCHANGED_FILE = 1;
+
+    /**
+     * The priority, in priority order, of a URL.
+     */
+    static final int URL = 2;
+
+    private final Deque<String>[] pending;
+    private final ToIntFunction<String> priority;
+    private final Set<String> visited = new HashSet<>();
+    private final Set<String> claimed;
+    private int scheduled;
+
+    CrawlFrontier() {
+        this(null);
+    }
+
+    /**
+     * @param claimed the links scheduled by any of the frontiers sharing it, or {@code null} if this one is on its own;
+     *                it must be safe to use from multiple threads at once
+     */
+    CrawlFrontier(Set<String> claimed) {
+        this(claimed, 1, link -> 0);
+    }
+
+    /**
+     * @param claimed    the links scheduled by any of the frontiers sharing it, or {@code null} if this one is on its
+     *                   own; it must be safe to use from multiple threads at once
+     * @param priorities the number of priorities
+     * @param priority   the priority of a link, from zero (checked first) up to {@code priorities - 1}
+     */
+    @SuppressWarnings("unchecked")
+    CrawlFrontier(Set<String> claimed, int priorities, ToIntFunction<String> priority) {
+        this.claimed = claimed;
+        this.priority = priority;
+        this.pending = new Deque[priorities];
+        for (int i = 0; i < priorities; i++) {
+            pending[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param order    {@link #DISCOVERY_ORDER} or {@link #PRIORITY_ORDER}; {@code null} means discovery order
+     * @param priority the priority of a link in priority order, i.e. {@link #CHANGED_FILE}, {@link #UNCHANGED_FILE},
+     *                 or {@link #URL}
+     * @throws IllegalArgumentException if the order is unknown
+     */
+    static CrawlFrontier forOrder(String order, Set<String> claimed, ToIntFunction<String> priority) {
+        if (order == null || DISCOVERY_ORDER.equals(order)) {
+            return new CrawlFrontier(claimed);
+        } else if (PRIORITY_ORDER.equals(order)) {
+            return new CrawlFrontier(claimed, URL + 1, priority);
+        }
+        throw new IllegalArgumentException("Unknown crawl order '" + order + "'; expected '" + DISCOVERY_ORDER + "' or '" + PRIORITY_ORDER + "'");
+    }
+
+    /**
+     * Schedules the link for checking unless it has been scheduled before.
+     *
+     * @param link the normalized link
+     * @return true if the link was newly scheduled; false if it was already known, here or by another frontier
+     */
+    boolean offer(String link) {
+        if (!visited.add(link) || (claimed != null && !claimed.add(link))) {
+            return false;
+        }
+        pending[priority.applyAsInt(link)].add(link);
+        scheduled++;
+        return true;
+    }
+
+    /**
+     * @return the next link to check, or {@code null} if there is nothing left to do
+     */
+    String poll() {
+        for (Deque<String> links : pending) {
+            if (!links.isEmpty()) {
+                return links.poll();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param max the most links to return
+     * @return up to {@code max} of the next links to check
+     */
+    List<String> poll(int max) {
+        List<String> links = new ArrayList<>(Math.min(max, remaining()));
+        for (Deque<String> byPriority : pending) {
+            while (links.size() < max && !byPriority.isEmpty()) {
+                links.add(byPriority.poll());
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @param max the most links to return
+     * @return up to {@code max} of the next links to check, leaving them scheduled
+     */
+    List<String> peek(int max) {
+        List<String> links = new ArrayList<>(Math.min(max, remaining()));
+        for (Deque<String> byPriority : pending) {
+            for (String link : byPriority) {
+                if (links.size() == max) {
+                    return links;
+                }
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    boolean isEmpty() {
+        for (Deque<String> links : pending) {
+            if (!links.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of links that are scheduled but have not been checked yet
+     */
+    int remaining() {
+        int size = 0;
+        for (Deque<String> links : pending) {
+            size += links.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of distinct links that have been scheduled so far by this frontier
+     */
+    int size() {
+        return scheduled;
+    }
+}
@@ -0,0 +1,286 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import groovy.json.JsonOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the work done by a link check, so that slow pages, slow hosts, and slow phases can be found.
+ * <p>
+ * All of the recording methods are safe to call from multiple threads at once.
+ */
+public class CrawlMetrics {
+
+    /**
+     * The number of slowest files to keep.
+     */
+    private static final int SLOWEST_FILES = 20;
+
+    /**
+     * The upper bounds, in milliseconds, of the buckets of the host latency histograms.
+     */
+    private static final long[] LATENCY_BUCKETS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final LongAdder filesParsed = new LongAdder();
+    private final LongAdder filesUnchanged = new LongAdder();
+    private final LongAdder filesMissing = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder linksExtracted = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder distinctLinks = new LongAdder();
+    private final LongAdder urlsFromCache = new LongAdder();
+    private final Map<UrlCheckResult.Outcome, LongAdder> urlOutcomes = new EnumMap<>(UrlCheckResult.Outcome.class);
+    private final ConcurrentMap<String, HostLatency> hostLatencies = new ConcurrentHashMap<>();
+    private final PriorityQueue<FileTiming> slowestFiles = new PriorityQueue<>(Comparator.comparingLong((FileTiming timing) -> timing.nanos));
+    /**
+     * The wall time, CPU time, number open, wall start, and CPU start of each phase, by name.
+     */
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+    public CrawlMetrics() {
+        for (UrlCheckResult.Outcome outcome : UrlCheckResult.Outcome.values()) {
+            urlOutcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    void fileParsed(File file, long bytes, long nanos) {
+        filesParsed.increment();
+        bytesRead.add(bytes);
+        parseNanos.add(nanos);
+        synchronized (slowestFiles) {
+            if (slowestFiles.size() < SLOWEST_FILES) {
+                slowestFiles.add(new FileTiming(file, bytes, nanos));
+            } else if (slowestFiles.peek().nanos < nanos) {
+                slowestFiles.poll();
+                slowestFiles.add(new FileTiming(file, bytes, nanos));
+            }
+        }
+    }
+
+    void fileUnchanged() {
+        filesUnchanged.increment();
+    }
+
+    void fileMissing() {
+        filesMissing.increment();
+    }
+
+    void linksExtracted(int links) {
+        linksExtracted.add(links);
+    }
+
+    void dedupHit() {
+        dedupHits.increment();
+    }
+
+    void distinctLinks(int links) {
+        distinctLinks.add(links);
+    }
+
+    void urlChecked(String host, long nanos) {
+        hostLatencies.computeIfAbsent(host, key -> new HostLatency()).record(nanos);
+    }
+
+    void urlResult(UrlCheckResult result) {
+        urlOutcomes.get(result.outcome).increment();
+        if (result.fromCache) {
+            urlsFromCache.increment();
+        }
+    }
+
+    /**
+     * Starts timing a phase of the check; the phase ends when the returned {@link Phase} is closed.
+     * Timing a phase with the same name more than once adds up the times, but phases with the same name that overlap,
+     * such as the crawls of roots that are checked at the same time, are timed once, from the first one starting until
+     * the last one ends, so the times never add up to more than actually elapsed.
+     */
+    Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * @return everything that has been recorded, as nested maps and lists ready to be written as JSON
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> files = new LinkedHashMap<>();
+        files.put("parsed", filesParsed.sum());
+        files.put("unchanged", filesUnchanged.sum());
+        files.put("missing", filesMissing.sum());
+        files.put("bytesRead", bytesRead.sum());
+        files.put("parseMillis", TimeUnit.NANOSECONDS.toMillis(parseNanos.sum()));
+
+        Map<String, Object> links = new LinkedHashMap<>();
+        links.put("extracted", linksExtracted.sum());
+        links.put("distinct", distinctLinks.sum());
+        links.put("dedupHits", dedupHits.sum());
+
+        Map<String, Object> outcomes = new LinkedHashMap<>();
+        long urlsChecked = 0;
+        for (Map.Entry<UrlCheckResult.Outcome, LongAdder> outcome : urlOutcomes.entrySet()) {
+            long count = outcome.getValue().sum();
+            if (count > 0) {
+                outcomes.put(outcome.getKey().name(), count);
+                urlsChecked += count;
+            }
+        }
+        Map<String, Object> urls = new LinkedHashMap<>();
+        urls.put("checked", urlsChecked);
+        urls.put("fromCache", urlsFromCache.sum());
+        urls.put("outcomes", outcomes);
+
+        List<Map<String, Object>> slowest = new ArrayList<>();
+        List<FileTiming> timings;
+        synchronized (slowestFiles) {
+            timings = new ArrayList<>(slowestFiles);
+        }
+        timings.sort(Comparator.comparingLong((FileTiming timing) -> timing.nanos).reversed());
+        for (FileTiming timing : timings) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("file", timing.file.getPath());
+            entry.put("bytes", timing.bytes);
+            entry.put("parseMillis", TimeUnit.NANOSECONDS.toMillis(timing.nanos));
+            slowest.add(entry);
+        }
+
+        Map<String, Object> hosts = new TreeMap<>();
+        for (Map.Entry<String, HostLatency> host : hostLatencies.entrySet()) {
+            hosts.put(host.getKey(), host.getValue().toMap());
+        }
+
+        Map<String, Object> phaseTimes = new LinkedHashMap<>();
+        synchronized (phases) {
+            for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(phase.getValue()[0]));
+                entry.put("cpuMillis", TimeUnit.NANOSECONDS.toMillis(phase.getValue()[1]));
+                phaseTimes.put(phase.getKey(), entry);
+            }
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("phases", phaseTimes);
+        metrics.put("files", files);
+        metrics.put("links", links);
+        metrics.put("urls", urls);
+        metrics.put("slowestFiles", slowest);
+        metrics.put("hosts", hosts);
+        return metrics;
+    }
+
+    /**
+     * Writes everything that has been recorded to the file as JSON.
+     */
+    public void writeJson(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        Files.write(file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(toMap())).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the CPU time used by the whole process so far in nanoseconds, or -1 if the JVM doesn't say
+     */
+    private static long processCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * A phase of the check that is being timed.
+     */
+    class Phase implements AutoCloseable {
+        private final long[] times;
+
+        private Phase(String name) {
+            synchronized (phases) {
+                times = phases.computeIfAbsent(name, key -> new long[5]);
+                if (times[2]++ == 0) {
+                    times[3] = System.nanoTime();
+                    times[4] = processCpuTime();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (phases) {
+                if (--times[2] == 0) {
+                    times[0] += System.nanoTime() - times[3];
+                    times[1] += times[4] < 0 ? 0 : Math.max(0, processCpuTime() - times[4]);
+                }
+            }
+        }
+    }
+
+    private static class FileTiming {
+        final File file;
+        final long bytes;
+        final long nanos;
+
+        FileTiming(File file, long bytes, long nanos) {
+            this.file = file;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * How long the requests to a single host took.
+     */
+    private static class HostLatency {
+        private final long[] buckets = new long[LATENCY_BUCKETS.length + 1];
+        private long requests;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && millis >= LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            requests++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> histogram = new LinkedHashMap<>();
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                String label = bucket < LATENCY_BUCKETS.length
+                        ? "<" + LATENCY_BUCKETS[bucket] + "ms"
+                        : ">=" + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1] + "ms";
+                histogram.put(label, buckets[bucket]);
+            }
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("requests", requests);
+            latency.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+            latency.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos));
+            latency.put("histogram", histogram);
+            return latency;
+        }
+    }
+}
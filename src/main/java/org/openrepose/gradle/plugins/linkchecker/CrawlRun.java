@@ -0,0 +1,259 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.gradle.api.logging.LogLevel.WARN;
+
+/**
+ * The state shared by all of the roots checked by one run of the link checker.
+ * <p>
+ * Each root is crawled on its own, possibly at the same time as the others, but they share the set of claimed links
+ * (so a page reachable from two roots is only read once), the anchor index, the URL checker, and the incremental
+ * state. A fragment that points into a page claimed by another root is checked once every root is done.
+ * <p>
+ * Which root claims a page depends on which gets there first, so when there is more than one root, what is collected
+ * from all of them is sorted rather than listed in the order it was found.
+ * <p>
+ * Bad links are written to the report as soon as any root finds them, and once {@link LinkCheckerSettings#maxBadLinks}
+ * have been found the run is stopped, and every root winds down without checking what is left.
+ * <p>
+ * Runs are registered by id while they are open, so that work items handed to Gradle's worker API, which can only be
+ * given serializable parameters, can find the run they belong to.
+ */
+class CrawlRun implements Closeable {
+
+    private static final ConcurrentMap<String, CrawlRun> RUNS = new ConcurrentHashMap<>();
+
+    final String id = UUID.randomUUID().toString();
+    final ReportWriter report;
+    final LinkCheckerSettings settings;
+    final CrawlMetrics metrics;
+    final LinkRules linkRules;
+    final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    final AnchorIndex anchorIndex = new AnchorIndex();
+    final IncrementalState incrementalState;
+    final UrlChecker urlChecker;
+    /**
+     * The URLs that were not in the recording being replayed, in alphabetical order; these are not bad links, they are
+     * just unknown.
+     */
+    final Set<String> notRecorded = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<File, Root> roots = new ConcurrentHashMap<>();
+    private final Queue<LinkChecker.LinkReport> deferredAnchors = new ConcurrentLinkedQueue<>();
+    private final LinkGraph deferredLinkGraph;
+    private final Set<String> found = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger foundCount = new AtomicInteger();
+    private volatile boolean stopped;
+    private volatile boolean closed;
+
+    CrawlRun(ReportWriter report, LinkCheckerSettings settings, CrawlMetrics metrics) {
+        this.report = report == null ? ReportWriter.wrap(null) : report;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.linkRules = new LinkRules(settings.linkAttributes);
+        this.incrementalState = IncrementalState.load(settings.incrementalStateFile,
+                LinkChecker.INCREMENTAL_FINGERPRINT + '/' + settings.linkExtractor + '/' + linkRules.fingerprint());
+        this.urlChecker = new UrlChecker(settings, metrics);
+        this.deferredLinkGraph = new LinkGraph(settings.maxLinkEdgesInMemory);
+    }
+
+    /**
+     * Makes the run available to {@link #get(String)} until it is closed.
+     *
+     * @return the id of the run
+     */
+    String register() {
+        RUNS.put(id, this);
+        return id;
+    }
+
+    /**
+     * @throws IllegalStateException if there is no such run open
+     */
+    static CrawlRun get(String id) {
+        CrawlRun run = RUNS.get(id);
+        if (run == null) {
+            throw new IllegalStateException("No link check with id " + id + " is in progress");
+        }
+        return run;
+    }
+
+    /**
+     * Crawls from the root, claiming whatever it reaches that no other root has claimed yet.
+     */
+    void crawl(File root) throws IOException {
+        Root result = new Root(new LinkGraph(settings.maxLinkEdgesInMemory));
+        if (roots.putIfAbsent(root, result) != null) {
+            return;
+        }
+        result.total = LinkChecker.crawl(this, root, result.linkGraph, result.badLinks);
+    }
+
+    /**
+     * Reports a bad link as soon as it is found, which may be well before the crawl is done; each link is only reported
+     * once, however many times it is found. Stops the run once the most bad links allowed have been found.
+     */
+    void found(String badLink) {
+        // a URL check can still complete after the run, and its report, are closed
+        if (closed || !found.add(badLink)) {
+            return;
+        }
+        report.log(WARN, "Bad link: {}", badLink);
+        if (settings.maxBadLinks > 0 && foundCount.incrementAndGet() >= settings.maxBadLinks) {
+            stopped = true;
+        }
+    }
+
+    /**
+     * @return true if enough bad links have been found that the run should stop without checking anything else
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Holds on to an anchor check until every root has been crawled, because its page has not been read yet.
+     */
+    void defer(LinkChecker.LinkReport anchorCheck) {
+        deferredAnchors.add(anchorCheck);
+    }
+
+    /**
+     * Checks the fragments that pointed into pages that had not been read yet when their root finished.
+     * This must only be called once every root has been crawled.
+     */
+    void resolveDeferredAnchors(LinkGraph linkGraph, List<String> badLinks) {
+        for (LinkChecker.LinkReport anchorCheck = deferredAnchors.poll(); anchorCheck != null; anchorCheck = deferredAnchors.poll()) {
+            int before = badLinks.size();
+            LinkChecker.processAnchor(report, anchorCheck, anchorIndex, settings, linkGraph, badLinks);
+            if (badLinks.size() > before) {
+                found(anchorCheck.link);
+            }
+        }
+    }
+
+    /**
+     * @return the number of files and URLs processed from the roots, each counted once
+     */
+    int total(Collection<File> roots) {
+        int total = 0;
+        for (File root : roots) {
+            Root result = this.roots.get(root);
+            if (result != null) {
+                total += result.total;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Collects the bad links, resolving the deferred anchor checks first; this must only be called once every root has
+     * been crawled.
+     *
+     * @return the bad links found from a single root in the order they were found, or those found from several roots
+     * in alphabetical order; a fragment that is missing in the eyes of more than one root is only listed once
+     */
+    List<String> badLinks(Collection<File> roots) {
+        Set<String> badLinks = new LinkedHashSet<>();
+        for (File root : roots) {
+            Root result = this.roots.get(root);
+            if (result != null) {
+                badLinks.addAll(result.badLinks);
+            }
+        }
+        List<String> deferredBadLinks = new ArrayList<>();
+        resolveDeferredAnchors(deferredLinkGraph, deferredBadLinks);
+        badLinks.addAll(deferredBadLinks);
+        List<String> result = new ArrayList<>(badLinks);
+        if (roots.size() > 1) {
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the distinct sources of each of the links, across the link graphs of every root, sorted if there is more
+     * than one root
+     * @see LinkGraph#sourcesOf(Collection)
+     */
+    Map<String, Set<File>> sourcesOf(Collection<File> roots, Collection<String> links) throws IOException {
+        Map<String, Set<File>> sourcesByLink = new LinkedHashMap<>();
+        List<LinkGraph> linkGraphs = new ArrayList<>();
+        for (File root : roots) {
+            Root result = this.roots.get(root);
+            if (result != null) {
+                linkGraphs.add(result.linkGraph);
+            }
+        }
+        linkGraphs.add(deferredLinkGraph);
+        for (LinkGraph linkGraph : linkGraphs) {
+            for (Map.Entry<String, Set<File>> sources : linkGraph.sourcesOf(links).entrySet()) {
+                sourcesByLink.computeIfAbsent(sources.getKey(), key -> roots.size() > 1 ? new TreeSet<>() : new LinkedHashSet<>())
+                        .addAll(sources.getValue());
+            }
+        }
+        return sourcesByLink;
+    }
+
+    /**
+     * Saves the incremental state; this is only done once every root has been crawled successfully, and not if the run
+     * was stopped early, when it would be missing whatever was not reached.
+     */
+    void save() throws IOException {
+        if (incrementalState != null && !stopped) {
+            incrementalState.save();
+        }
+    }
+
+    /**
+     * Saves the URL cache, and the recording of URL checks unless the run was stopped early, deletes any spilled link
+     * graphs, and forgets the run.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        RUNS.remove(id);
+        if (stopped) {
+            urlChecker.discardRecording();
+        }
+        try {
+            urlChecker.close();
+        } finally {
+            for (Root root : roots.values()) {
+                root.linkGraph.close();
+            }
+            deferredLinkGraph.close();
+        }
+    }
+
+    /**
+     * What was found from a single root.
+     */
+    private static class Root {
+        final LinkGraph linkGraph;
+        final List<String> badLinks = new ArrayList<>();
+        int total;
+
+        Root(LinkGraph linkGraph) {
+            this.linkGraph = linkGraph;
+        }
+    }
+}
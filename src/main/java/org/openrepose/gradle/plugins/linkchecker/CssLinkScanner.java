@@ -0,0 +1,106 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+/**
+ * Finds the links in a stylesheet: the targets of {@code url(...)} and of {@code @import}.
+ * <p>
+ * This is not a CSS parser; it scans the text once, skipping comments, and only understands as much of the syntax as
+ * it takes to find those two. Escapes in the URLs are not decoded.
+ */
+class CssLinkScanner implements LinkExtractor {
+
+    /**
+     * The element name that stylesheet links are reported with.
+     */
+    static final String ELEMENT = "css";
+
+    private static final String URL = "url(";
+    private static final String IMPORT = "@import";
+
+    @Override
+    public void extract(String css, LinkHandler handler) {
+        int length = css.length();
+        int pos = 0;
+        while (pos < length) {
+            char c = css.charAt(pos);
+            if (c == '/' && css.startsWith("/*", pos)) {
+                int end = css.indexOf("*/", pos + 2);
+                if (end < 0) {
+                    return;
+                }
+                pos = end + 2;
+            } else if ((c == 'u' || c == 'U') && css.regionMatches(true, pos, URL, 0, URL.length()) && !isNameChar(css, pos - 1)) {
+                pos = url(css, pos + URL.length(), handler);
+            } else if (c == '@' && css.regionMatches(true, pos, IMPORT, 0, IMPORT.length())) {
+                pos = skipWhitespace(css, pos + IMPORT.length());
+                if (pos < length && (css.charAt(pos) == '"' || css.charAt(pos) == '\'')) {
+                    int end = css.indexOf(css.charAt(pos), pos + 1);
+                    if (end < 0) {
+                        return;
+                    }
+                    handler.link(ELEMENT, IMPORT, css.substring(pos + 1, end));
+                    pos = end + 1;
+                }
+                // otherwise it is followed by url(...), which is found next
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Reports the link of a {@code url(...)}.
+     *
+     * @param pos the position just after the opening parenthesis
+     * @return the position just after the closing parenthesis
+     */
+    private static int url(String css, int pos, LinkHandler handler) {
+        int length = css.length();
+        pos = skipWhitespace(css, pos);
+        if (pos >= length) {
+            return length;
+        }
+        char quote = css.charAt(pos);
+        int start;
+        int end;
+        if (quote == '"' || quote == '\'') {
+            start = pos + 1;
+            end = css.indexOf(quote, start);
+            if (end < 0) {
+                return length;
+            }
+            pos = end + 1;
+        } else {
+            start = pos;
+            end = css.indexOf(')', start);
+            if (end < 0) {
+                return length;
+            }
+            pos = end;
+            while (end > start && isWhitespace(css.charAt(end - 1))) {
+                end--;
+            }
+        }
+        handler.link(ELEMENT, "url", css.substring(start, end));
+        int close = css.indexOf(')', pos);
+        return close < 0 ? length : close + 1;
+    }
+
+    private static boolean isNameChar(String css, int pos) {
+        if (pos < 0) {
+            return false;
+        }
+        char c = css.charAt(pos);
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    private static int skipWhitespace(String css, int pos) {
+        while (pos < css.length() && isWhitespace(css.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,130 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a host matches any of a set of regular expressions, with the same result as trying
+ * {@link String#matches(String)} with each of them in turn.
+ * <p>
+ * The expressions are sorted once, up front:
+ * <ul>
+ * <li>plain host names (e.g. {@code www\.example\.com}) are looked up in a hash set,</li>
+ * <li>domain wildcards (e.g. {@code .*\.example\.com}) are looked up by each of the host's parent domains,</li>
+ * <li>any other suffix wildcards (e.g. {@code .*example\.com}) are checked with {@link String#endsWith(String)},</li>
+ * <li>and everything else is compiled into a single alternation.</li>
+ * </ul>
+ * The verdict for each host is remembered, so after the first time a host is seen, matching it again is a single map
+ * lookup.
+ */
+class HostMatcher {
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+
+    private final Set<String> hosts = new HashSet<>();
+    private final Set<String> domains = new HashSet<>();
+    private final List<String> suffixes = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final ConcurrentMap<String, Boolean> verdicts = new ConcurrentHashMap<>();
+    private final Function<String, Boolean> classifier = this::classify;
+
+    HostMatcher(Collection<String> regexs) {
+        List<String> combinable = new ArrayList<>();
+        for (String regex : regexs) {
+            String literal = literal(regex);
+            if (literal != null) {
+                hosts.add(literal);
+                continue;
+            }
+            if (regex.startsWith(".*")) {
+                String suffix = literal(regex.substring(2));
+                if (suffix != null) {
+                    if (suffix.startsWith(".")) {
+                        domains.add(suffix);
+                    } else {
+                        suffixes.add(suffix);
+                    }
+                    continue;
+                }
+            }
+            if (BACK_REFERENCE.matcher(regex).find()) {
+                // group numbers would shift if this were combined with the others
+                patterns.add(Pattern.compile(regex));
+            } else {
+                combinable.add(regex);
+            }
+        }
+        if (!combinable.isEmpty()) {
+            StringBuilder combined = new StringBuilder();
+            for (String regex : combinable) {
+                if (combined.length() > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?:").append(regex).append(')');
+            }
+            patterns.add(Pattern.compile(combined.toString()));
+        }
+    }
+
+    /**
+     * @return true if the host fully matches any of the regular expressions
+     */
+    boolean matches(String host) {
+        Boolean verdict = verdicts.get(host);
+        if (verdict == null) {
+            verdict = verdicts.computeIfAbsent(host, classifier);
+        }
+        return verdict;
+    }
+
+    private Boolean classify(String host) {
+        if (hosts.contains(host)) {
+            return true;
+        }
+        for (int dot = host.indexOf('.'); dot >= 0; dot = host.indexOf('.', dot + 1)) {
+            if (domains.contains(host.substring(dot))) {
+                return true;
+            }
+        }
+        for (String suffix : suffixes) {
+            if (host.endsWith(suffix)) {
+                return true;
+            }
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(host).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the text matched by the regular expression if it only matches exactly that text, otherwise {@code null}
+     */
+    private static String literal(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length() && isEscapedLiteral(regex.charAt(i + 1))) {
+                literal.append(regex.charAt(++i));
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                literal.append(c);
+            } else {
+                return null;
+            }
+        }
+        return literal.toString();
+    }
+
+    private static boolean isEscapedLiteral(char c) {
+        return c == '.' || c == '-';
+    }
+}
@@ -0,0 +1,221 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The links extracted from each local file by the previous run, so that files which have not changed since then do
+ * not need to be parsed again.
+ * <p>
+ * A file is considered unchanged if its size and modification time are the same as last time, or failing that, if its
+ * content hash is. Only the files reached by the current run are saved, so deleted and unreachable files drop out.
+ * The state is discarded entirely if it was written with a different {@code fingerprint}, i.e. by a run that would
+ * have extracted links differently.
+ */
+class IncrementalState {
+
+    private static final Logger log = Logging.getLogger(IncrementalState.class);
+
+    private static final String HEADER = "# linkchecker incremental state ";
+    private static final String FILE = "F\t";
+    private static final String LINK = "L\t";
+    private static final String IGNORED = "I\t";
+    private static final String ANCHOR = "A\t";
+    private static final String FRAGMENT = "R\t";
+
+    private final File stateFile;
+    private final String fingerprint;
+    private final Map<String, Page> previous = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Page> current = new ConcurrentHashMap<>();
+
+    private IncrementalState(File stateFile, String fingerprint) {
+        this.stateFile = stateFile;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads the state left by the previous run.
+     *
+     * @param stateFile   where the state is kept, or {@code null} if incremental checking is not configured
+     * @param fingerprint identifies how links are extracted; state written with a different one is ignored
+     * @return the state, or {@code null} if incremental checking is not configured
+     */
+    static IncrementalState load(File stateFile, String fingerprint) {
+        if (stateFile == null) {
+            return null;
+        }
+        IncrementalState state = new IncrementalState(stateFile, fingerprint);
+        if (stateFile.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(stateFile.toPath(), StandardCharsets.UTF_8)) {
+                state.read(reader);
+            } catch (IOException | RuntimeException e) {
+                log.info("Ignoring unreadable incremental state: {}", stateFile, e);
+                state.previous.clear();
+            }
+        }
+        return state;
+    }
+
+    private void read(BufferedReader reader) throws IOException {
+        if (!(HEADER + fingerprint).equals(reader.readLine())) {
+            return;
+        }
+        Page page = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.startsWith(FILE)) {
+                String[] fields = line.split("\t", 5);
+                page = new Page(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+                previous.put(fields[4], page);
+            } else if (line.startsWith(LINK) && page != null) {
+                page.links.add(line.substring(LINK.length()));
+            } else if (line.startsWith(IGNORED) && page != null) {
+                page.ignored.add(line.substring(IGNORED.length()));
+            } else if (line.startsWith(ANCHOR) && page != null) {
+                page.anchors.add(line.substring(ANCHOR.length()));
+            } else if (line.startsWith(FRAGMENT) && page != null) {
+                page.fragments.add(line.substring(FRAGMENT.length()));
+            }
+        }
+    }
+
+    /**
+     * @return what was extracted from the file last time if its size and modification time have not changed since,
+     * otherwise {@code null}
+     */
+    Page unchanged(File file) {
+        Page page = previous.get(file.getPath());
+        if (isUnchanged(page, file)) {
+            current.put(file.getPath(), page);
+            return page;
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #unchanged(File)}, but without keeping the file in the state.
+     *
+     * @return true if the file can be skipped because its size and modification time have not changed
+     */
+    boolean isUnchanged(File file) {
+        return isUnchanged(previous.get(file.getPath()), file);
+    }
+
+    private static boolean isUnchanged(Page page, File file) {
+        return page != null && page.length == file.length() && page.lastModified == file.lastModified();
+    }
+
+    /**
+     * @return what was extracted from the file last time if its content is the same, otherwise {@code null}
+     */
+    Page sameContent(File file, String hash) {
+        Page page = previous.get(file.getPath());
+        if (page != null && page.hash.equals(hash)) {
+            Page touched = new Page(file.length(), file.lastModified(), hash, page.links, page.ignored, page.anchors, page.fragments);
+            current.put(file.getPath(), touched);
+            return touched;
+        }
+        return null;
+    }
+
+    /**
+     * Remembers what was extracted from the file by this run.
+     */
+    void record(File file, String hash, List<String> links, List<String> ignored, Collection<String> anchors, List<String> fragments) {
+        if (containsLineBreak(links) || containsLineBreak(ignored) || containsLineBreak(anchors) || containsLineBreak(fragments)) {
+            // can't be written to the state file; just parse the file again next time
+            return;
+        }
+        current.put(file.getPath(), new Page(file.length(), file.lastModified(), hash, links, ignored, anchors, fragments));
+    }
+
+    private static boolean containsLineBreak(Collection<String> links) {
+        for (String link : links) {
+            if (link.indexOf('\n') >= 0 || link.indexOf('\r') >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the state of this run, replacing that of the previous run.
+     */
+    void save() throws IOException {
+        File parent = stateFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        File temp = File.createTempFile(stateFile.getName(), ".tmp", parent);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(HEADER + fingerprint);
+                writer.newLine();
+                for (Map.Entry<String, Page> entry : current.entrySet()) {
+                    Page page = entry.getValue();
+                    writer.write(FILE + page.length + '\t' + page.lastModified + '\t' + page.hash + '\t' + entry.getKey());
+                    writer.newLine();
+                    for (String link : page.links) {
+                        writer.write(LINK + link);
+                        writer.newLine();
+                    }
+                    for (String link : page.ignored) {
+                        writer.write(IGNORED + link);
+                        writer.newLine();
+                    }
+                    for (String anchor : page.anchors) {
+                        writer.write(ANCHOR + anchor);
+                        writer.newLine();
+                    }
+                    for (String link : page.fragments) {
+                        writer.write(FRAGMENT + link);
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * What was extracted from a single file.
+     */
+    static class Page {
+        final long length;
+        final long lastModified;
+        final String hash;
+        final List<String> links;
+        final List<String> ignored;
+        final Collection<String> anchors;
+        final List<String> fragments;
+
+        Page(long length, long lastModified, String hash) {
+            this(length, lastModified, hash, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        Page(long length, long lastModified, String hash, List<String> links, List<String> ignored, Collection<String> anchors, List<String> fragments) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.links = links;
+            this.ignored = ignored;
+            this.anchors = anchors;
+            this.fragments = fragments;
+        }
+    }
+}
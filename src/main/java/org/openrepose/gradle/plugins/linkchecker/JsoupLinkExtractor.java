@@ -0,0 +1,43 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.List;
+
+/**
+ * Finds links by parsing the document into a Jsoup DOM and visiting each element once.
+ */
+class JsoupLinkExtractor implements LinkExtractor {
+
+    private final LinkRules rules;
+
+    JsoupLinkExtractor(LinkRules rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public void extract(String html, LinkHandler handler) {
+        Document document = Jsoup.parse(html, "");
+        for (Element element : document.getAllElements()) {
+            String id = element.id();
+            if (!id.isEmpty()) {
+                handler.anchor(id);
+            }
+            if ("a".equals(element.tagName()) && !element.attr("name").isEmpty()) {
+                handler.anchor(element.attr("name"));
+            }
+            List<String> attributes = rules.attributesOf(element.tagName());
+            if (attributes != null && !LinkRules.isResourceHint(element.tagName(), element.hasAttr("rel") ? element.attr("rel") : null)) {
+                String[] values = new String[attributes.size()];
+                for (int i = 0; i < values.length; i++) {
+                    if (element.hasAttr(attributes.get(i))) {
+                        values[i] = element.attr(attributes.get(i));
+                    }
+                }
+                LinkRules.report(handler, element.tagName(), attributes, values);
+            }
+        }
+    }
+}
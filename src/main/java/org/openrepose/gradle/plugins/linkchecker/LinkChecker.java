@@ -1,45 +1,42 @@
 package org.openrepose.gradle.plugins.linkchecker;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.PrintWriter;
-import java.net.*;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 import static org.gradle.api.logging.LogLevel.*;
-import static org.openrepose.gradle.plugins.linkchecker.LinkCheckerPluginTask.logMsg;
 
 public class LinkChecker {
 
     private static final Logger log = Logging.getLogger(LinkChecker.class);
 
     /**
-     * The elements and their attributes that we want to validate.
+     * Finds the links in local stylesheets, which are not HTML.
      */
-    private static final Map<String, String> ELEMENTS_TO_ATTRIBUTES;
-
-    static {
-        Map<String, String> elementsToAttributes = new HashMap<>();
-        elementsToAttributes.put("a", "href");
-        elementsToAttributes.put("frame", "src");
-        elementsToAttributes.put("img", "src");
-        ELEMENTS_TO_ATTRIBUTES = Collections.unmodifiableMap(elementsToAttributes);
-    }
+    private static final LinkExtractor CSS_SCANNER = new CssLinkScanner();
 
     private static final UrlValidator URL_VALIDATOR = new UrlValidator(UrlValidator.ALLOW_LOCAL_URLS);
 
+    /**
+     * Identifies how links are extracted from files.
+     * This must be changed whenever that changes, so that links saved by an older version are not reused.
+     */
+    static final String INCREMENTAL_FINGERPRINT = "7";
+
+    /**
+     * The number of frontier entries handed to each thread per batch.
+     */
+    private static final int BATCH_SIZE_PER_THREAD = 64;
+
     private LinkChecker() {
         // This class should not be instantiated.
     }
@@ -81,156 +78,648 @@ public class LinkChecker {
             Collection<String> ignoreHostRegexs,
             Multimap<String, File> linksToSourceFiles,
             List<String> badLinks
+    ) throws IllegalArgumentException, IOException {
+        LinkCheckerSettings settings = new LinkCheckerSettings();
+        settings.defaultFile = defaultFile;
+        settings.failOnLocalHost = failOnLocalHost;
+        settings.failOnIgnoredHost = failOnIgnoredHost;
+        settings.failOnBadUrls = failOnBadUrls;
+        settings.httpURLConnectionTimeout = httpURLConnectionTimeout;
+        settings.ignoreHostRegexs = ignoreHostRegexs;
+        return checkLinks(printWriter, startFile, settings, linksToSourceFiles, badLinks);
+    }
+
+    /**
+     * Recursively checks the links starting from the startFile.
+     * <p>
+     * Local files are read and parsed on up to {@link LinkCheckerSettings#parallelism} threads, but their results are
+     * always merged in the order of the {@link LinkCheckerSettings#crawlOrder}; the links, bad links, log, and returned
+     * total are the same regardless of the parallelism.
+     *
+     * @param printWriter        The file to log to.
+     * @param startFile          The file to start from.
+     *                           Links from the file will be checked.
+     *                           Non-URL links (i.e. local files) will be taken for further link checking (feels like recursion).
+     * @param settings           The settings for this run.
+     * @param linksToSourceFiles Populated with all the files processed.
+     * @param badLinks           Populated with all the bad links that could not be processed.
+     * @return the total number of files processed
+     * @throws IllegalArgumentException if the startFileName is null or the file does not exist
+     * @throws IOException              if anything goes wrong while trying to access a file
+     */
+    public static int checkLinks(
+            PrintWriter printWriter,
+            File startFile,
+            LinkCheckerSettings settings,
+            Multimap<String, File> linksToSourceFiles,
+            List<String> badLinks
+    ) throws IllegalArgumentException, IOException {
+        return checkLinks(ReportWriter.wrap(printWriter), startFile, settings, linksToSourceFiles, badLinks, new CrawlMetrics());
+    }
+
+    /**
+     * Recursively checks the links starting from the startFile, recording what was done and how long it took.
+     *
+     * @param report             Where to log to, or {@code null} to only log to Gradle.
+     * @param startFile          The file to start from.
+     *                           Links from the file will be checked.
+     *                           Non-URL links (i.e. local files) will be taken for further link checking (feels like recursion).
+     * @param settings           The settings for this run.
+     * @param linksToSourceFiles Populated with all the files processed.
+     * @param badLinks           Populated with all the bad links that could not be processed.
+     * @param metrics            Populated with the counts and timings of this run.
+     * @return the total number of files processed
+     * @throws IllegalArgumentException if the startFileName is null or the file does not exist
+     * @throws IOException              if anything goes wrong while trying to access a file
+     * @see #checkLinks(PrintWriter, File, LinkCheckerSettings, Multimap, List)
+     */
+    public static int checkLinks(
+            ReportWriter report,
+            File startFile,
+            LinkCheckerSettings settings,
+            Multimap<String, File> linksToSourceFiles,
+            List<String> badLinks,
+            CrawlMetrics metrics
+    ) throws IllegalArgumentException, IOException {
+        try (LinkGraph linkGraph = new LinkGraph(settings.maxLinkEdgesInMemory)) {
+            int total = checkLinkGraph(report, startFile, settings, linkGraph, badLinks, metrics);
+            if (linksToSourceFiles != null) {
+                linkGraph.forEach(linksToSourceFiles::put);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Recursively checks the links starting from the startFile, recording which files link where in a compact
+     * {@link LinkGraph} rather than a {@link Multimap}.
+     *
+     * @param report    Where to log to, or {@code null} to only log to Gradle.
+     * @param startFile The file to start from.
+     *                  Links from the file will be checked.
+     *                  Non-URL links (i.e. local files) will be taken for further link checking (feels like recursion).
+     * @param settings  The settings for this run.
+     * @param linkGraph Populated with the links in all the files processed.
+     * @param badLinks  Populated with all the bad links that could not be processed.
+     * @param metrics   Populated with the counts and timings of this run.
+     * @return the total number of files processed
+     * @throws IllegalArgumentException if the startFileName is null or the file does not exist
+     * @throws IOException              if anything goes wrong while trying to access a file
+     */
+    public static int checkLinkGraph(
+            ReportWriter report,
+            File startFile,
+            LinkCheckerSettings settings,
+            LinkGraph linkGraph,
+            List<String> badLinks,
+            CrawlMetrics metrics
     ) throws IllegalArgumentException, IOException {
         if (startFile == null) {
             throw new IllegalArgumentException("'startFile' can NOT be NULL");
         }
-        if (defaultFile == null) {
-            defaultFile = "index.html";
-        }
-        if (linksToSourceFiles == null) {
-            linksToSourceFiles = HashMultimap.create();
-        }
         if (badLinks == null) {
             badLinks = new ArrayList<>();
         }
+        try (CrawlRun run = new CrawlRun(report, settings, metrics)) {
+            int total = crawl(run, startFile, linkGraph, badLinks);
+            run.resolveDeferredAnchors(linkGraph, badLinks);
+            run.save();
+            return total;
+        }
+    }
+
+    /**
+     * Recursively checks the links starting from the startFile, as one of the roots of the run.
+     * Files and URLs already claimed by another root of the run are left to that root.
+     *
+     * @return the number of files and URLs processed from this root
+     * @throws IllegalArgumentException if the file does not exist
+     */
+    static int crawl(CrawlRun run, File startFile, LinkGraph linkGraph, List<String> badLinks) throws IllegalArgumentException, IOException {
+        ReportWriter report = run.report;
+        LinkCheckerSettings settings = run.settings;
+        CrawlMetrics metrics = run.metrics;
+        String defaultFile = settings.defaultFile;
+        if (defaultFile == null) {
+            defaultFile = "index.html";
+        }
 
         if (!startFile.exists()) {
             throw new IllegalArgumentException("Starting Dir/File '" + startFile.getAbsolutePath() + "' does NOT exist");
         }
-        logMsg(INFO, printWriter, "Checking links starting from: {}", startFile.getAbsolutePath());
+        if (report.isEnabled(INFO)) {
+            report.log(INFO, "Checking links starting from: {}", startFile.getAbsolutePath());
+        }
 
-        List<String> todoListLinks = new ArrayList<>();
+        LinkExtractor linkExtractor = LinkExtractor.forEngine(settings.linkExtractor, run.linkRules);
+        PageReader pageReader = new PageReader(settings.readAheadBytes);
+        PageExtractor pageExtractor = new PageExtractor(defaultFile, linkExtractor, run.incrementalState, metrics, pageReader);
+        CrawlFrontier frontier = CrawlFrontier.forOrder(settings.crawlOrder, run.claimed, pageExtractor::priorityOf);
+        // The bad local files, the URL checks, and the anchor checks in the order they were checked, so that bad links are reported in a stable order.
+        List<LinkReport> reports = new ArrayList<>();
+        Map<String, LinkReport> anchorChecks = new HashMap<>();
+        int parallelism = Math.max(1, settings.parallelism);
+        ExecutorService executor = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        int unchecked = 0;
+        try {
+            try (CrawlMetrics.Phase ignored = metrics.phase("crawl")) {
+                frontier.offer(startFile.getCanonicalPath());
+                while (!frontier.isEmpty() && !run.isStopped()) {
+                    // Work through the frontier in bounded batches so that memory use does not grow with the tree size.
+                    List<String> batch = frontier.poll(parallelism * BATCH_SIZE_PER_THREAD);
+                    // read what is already known of the next batch while this one is parsed
+                    pageExtractor.readAhead(frontier.peek(parallelism * BATCH_SIZE_PER_THREAD));
+                    List<PageLinks> pages = extractLinks(executor, batch, pageExtractor);
+                    for (int i = 0; i < batch.size(); i++) {
+                        String link = batch.get(i);
+                        PageLinks page = pages.get(i);
+                        if (page == null) {
+                            // the check was started when the URL was found, so this shares it
+                            reports.add(new LinkReport(link, run.urlChecker.submit(link)));
+                        } else {
+                            processLinkAsFile(run, link, page, frontier, linkGraph, reports, anchorChecks);
+                            if (!page.exists) {
+                                run.found(link);
+                            }
+                        }
+                    }
+                }
+                metrics.distinctLinks(frontier.size());
+                if (run.isStopped()) {
+                    // the URLs left were already being checked when they were found, so take whatever has been decided
+                    for (String link : frontier.poll(frontier.remaining())) {
+                        if (URL_VALIDATOR.isValid(link)) {
+                            reports.add(new LinkReport(link, run.urlChecker.submit(link)));
+                        } else {
+                            unchecked++;
+                        }
+                    }
+                }
+            }
 
-        todoListLinks.add(startFile.getAbsolutePath());
-        // don't use foreach as this is a growing list
-        for (int i = 0; i < todoListLinks.size(); i++) {
-            String link = todoListLinks.get(i);
-            if (URL_VALIDATOR.isValid(link)) {
-                processLinkAsUrl(printWriter, link, failOnLocalHost, failOnIgnoredHost, failOnBadUrls, httpURLConnectionTimeout, ignoreHostRegexs, badLinks);
-            } else {
-                processLinkAsFile(printWriter, link, defaultFile, todoListLinks, linksToSourceFiles, badLinks);
+            try (CrawlMetrics.Phase ignored = metrics.phase("urlChecks")) {
+                // in priority order, nothing local waits on the network
+                List<LinkReport> ordered = CrawlFrontier.PRIORITY_ORDER.equals(settings.crawlOrder) ? localFirst(reports) : reports;
+                for (LinkReport linkReport : ordered) {
+                    if (run.isStopped() && linkReport.urlCheck != null && !linkReport.urlCheck.isDone()) {
+                        unchecked++;
+                        continue;
+                    }
+                    int before = badLinks.size();
+                    if (linkReport.anchor != null) {
+                        if (run.anchorIndex.isIndexed(linkReport.page)) {
+                            processAnchor(report, linkReport, run.anchorIndex, settings, linkGraph, badLinks);
+                        } else {
+                            // the page may belong to another root that has not read it yet
+                            run.defer(linkReport);
+                        }
+                    } else if (linkReport.urlCheck == null) {
+                        badLinks.add(linkReport.link);
+                    } else {
+                        UrlCheckResult result = await(linkReport.urlCheck);
+                        metrics.urlResult(result);
+                        processLinkAsUrl(report, linkReport.link, result, settings, badLinks);
+                        if (result.outcome == UrlCheckResult.Outcome.NOT_RECORDED) {
+                            run.notRecorded.add(linkReport.link);
+                        }
+                    }
+                    if (badLinks.size() > before) {
+                        run.found(linkReport.link);
+                    }
+                }
+            }
+            if (run.isStopped()) {
+                report.log(WARN, "Stopped checking links from {} after finding {} bad links; {} links were not checked.",
+                        startFile.getAbsolutePath(), settings.maxBadLinks, unchecked);
+            }
+        } finally {
+            pageReader.close();
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
-        return todoListLinks.size();
+        return frontier.size();
+    }
+
+    /**
+     * Starts checking the URL in the background, and reports it as soon as it turns out to be bad.
+     */
+    private static void checkUrl(CrawlRun run, String link) {
+        run.urlChecker.submit(link).thenAccept(result -> {
+            if (isBadUrl(result, run.settings)) {
+                run.found(link);
+            }
+        });
+    }
+
+    /**
+     * @return the local reports, then the URL checks, each in their original order
+     */
+    private static List<LinkReport> localFirst(List<LinkReport> reports) {
+        List<LinkReport> ordered = new ArrayList<>(reports.size());
+        for (LinkReport linkReport : reports) {
+            if (linkReport.urlCheck == null) {
+                ordered.add(linkReport);
+            }
+        }
+        for (LinkReport linkReport : reports) {
+            if (linkReport.urlCheck != null) {
+                ordered.add(linkReport);
+            }
+        }
+        return ordered;
+    }
+
+    private static UrlCheckResult await(Future<UrlCheckResult> urlCheck) throws IOException {
+        try {
+            return urlCheck.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking links");
+        } catch (ExecutionException e) {
+            throw new LinkCheckerPluginException("Failed to check links", e.getCause());
+        }
+    }
+
+    /**
+     * Reads and parses the local files in the batch, in parallel if an executor is given.
+     *
+     * @return the extracted links for each entry in the batch, with {@code null} for the entries that are URLs
+     */
+    private static List<PageLinks> extractLinks(ExecutorService executor, List<String> batch, PageExtractor pageExtractor) throws IOException {
+        List<PageLinks> pages = new ArrayList<>(batch.size());
+        if (executor == null) {
+            for (String link : batch) {
+                pages.add(URL_VALIDATOR.isValid(link) ? null : pageExtractor.extract(link));
+            }
+            return pages;
+        }
+
+        List<Callable<PageLinks>> tasks = new ArrayList<>(batch.size());
+        for (String link : batch) {
+            tasks.add(() -> URL_VALIDATOR.isValid(link) ? null : pageExtractor.extract(link));
+        }
+        try {
+            for (Future<PageLinks> future : executor.invokeAll(tasks)) {
+                pages.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking links");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new LinkCheckerPluginException("Failed to check links", e.getCause());
+        }
+        return pages;
     }
 
     private static void processLinkAsUrl(
-            PrintWriter printWriter,
+            ReportWriter report,
             String link,
-            boolean failOnLocalHost,
-            boolean failOnIgnoredHost,
-            boolean failOnBadUrls,
-            int httpURLConnectionTimeout,
-            Collection<String> ignoreHostRegexs,
+            UrlCheckResult result,
+            LinkCheckerSettings settings,
             List<String> badLinks
     ) {
-        logMsg(INFO, printWriter, "Processing URL: {}", link);
-        try {
-            URL url = new URL(link);
-            // note that this also matches https
-            if (url.getProtocol().startsWith("http")) {
-                // note that this is ignoring 127.0.0.1 altogether, gotta draw a line somewhere
-                String host = url.getHost();
-                if (host.equals("localhost")) {
-                    logMsg(INFO, printWriter, "URL of localhost indicates suspicious environment dependency: {}", url);
-                    if (failOnLocalHost) {
-                        badLinks.add(link);
+        report.log(INFO, "Processing URL: {}", link);
+        if (result.fromCache) {
+            report.log(DEBUG, "Using the cached result for URL: {}", link);
+        }
+        if (result.redirectTarget != null) {
+            report.log(DEBUG, "Redirected to: {}", result.redirectTarget);
+        }
+        switch (result.outcome) {
+            case MALFORMED:
+                report.log(WARN, "Bad URL: {}", link, result.exception);
+                break;
+            case UNSUPPORTED_PROTOCOL:
+                report.log(INFO, "Only http* supported; not handling URL: {}", link);
+                break;
+            case LOCALHOST:
+                report.log(INFO, "URL of localhost indicates suspicious environment dependency: {}", link);
+                break;
+            case IGNORED_HOST:
+                report.log(INFO, "The host destination is configured to be ignored: {}", link);
+                break;
+            case REDIRECT:
+                report.log(INFO, "Got response code {} for URL: {}", result.responseCode, link);
+                break;
+            case BAD_RESPONSE:
+                report.log(WARN, "Got response code {} for URL: {}", result.responseCode, link);
+                break;
+            case CANNOT_CONNECT:
+                report.log(WARN, "Cannot connect to URL: {}", link);
+                report.log(DEBUG, "Source:", result.exception);
+                break;
+            case PROBLEM:
+                report.log(WARN, "Problem with URL: {}", link);
+                report.log(DEBUG, "Source:", result.exception);
+                break;
+            case OVER_BUDGET:
+                report.log(WARN, "Ran out of time to check URL: {}", link);
+                break;
+            case NOT_RECORDED:
+                report.log(WARN, "URL is not in the recording of URL checks: {}", link);
+                break;
+            default:
+                break;
+        }
+        if (isBadUrl(result, settings)) {
+            badLinks.add(link);
+        }
+    }
+
+    /**
+     * @return true if the result of checking a URL makes it a bad link, as configured
+     */
+    private static boolean isBadUrl(UrlCheckResult result, LinkCheckerSettings settings) {
+        switch (result.outcome) {
+            case MALFORMED:
+            case BAD_RESPONSE:
+            case CANNOT_CONNECT:
+            case PROBLEM:
+            case OVER_BUDGET:
+                return settings.failOnBadUrls;
+            case LOCALHOST:
+                return settings.failOnLocalHost;
+            case IGNORED_HOST:
+                return settings.failOnIgnoredHost;
+            default:
+                return false;
+        }
+    }
+
+    static void processAnchor(
+            ReportWriter report,
+            LinkReport linkReport,
+            AnchorIndex anchorIndex,
+            LinkCheckerSettings settings,
+            LinkGraph linkGraph,
+            List<String> badLinks
+    ) {
+        if (anchorIndex.isMissing(linkReport.page, linkReport.anchor)) {
+            report.log(WARN, "Missing anchor: {}", linkReport.link);
+            if (settings.failOnBadAnchors) {
+                badLinks.add(linkReport.link);
+                for (File source : linkReport.sources) {
+                    linkGraph.add(linkReport.link, source);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads local files and resolves all of the links in them.
+     * <p>
+     * If a file has not changed since the previous run, the links are taken from the incremental state instead.
+     * This does not touch any shared state, so it is safe to use from multiple threads at once.
+     */
+    private static class PageExtractor {
+        private final String defaultFile;
+        private final LinkExtractor linkExtractor;
+        private final IncrementalState incrementalState;
+        private final CrawlMetrics metrics;
+        private final PageReader pageReader;
+
+        PageExtractor(String defaultFile, LinkExtractor linkExtractor, IncrementalState incrementalState, CrawlMetrics metrics, PageReader pageReader) {
+            this.defaultFile = defaultFile;
+            this.linkExtractor = linkExtractor;
+            this.incrementalState = incrementalState;
+            this.metrics = metrics;
+            this.pageReader = pageReader;
+        }
+
+        private File fileOf(String fileLink) {
+            File file = new File(fileLink);
+            if (file.isDirectory()) {
+                file = new File(file, defaultFile);
+            }
+            return file;
+        }
+
+        /**
+         * @return the priority of the link when links are checked in priority order
+         */
+        int priorityOf(String link) {
+            if (URL_VALIDATOR.isValid(link)) {
+                return CrawlFrontier.URL;
+            }
+            return incrementalState != null && incrementalState.isUnchanged(fileOf(link)) ? CrawlFrontier.UNCHANGED_FILE : CrawlFrontier.CHANGED_FILE;
+        }
+
+        /**
+         * Starts reading the files that will be extracted soon, skipping the ones that do not need to be read.
+         */
+        void readAhead(List<String> links) {
+            pageReader.readAhead(links, link -> {
+                if (URL_VALIDATOR.isValid(link)) {
+                    return null;
+                }
+                File file = fileOf(link);
+                return file.isFile() && (incrementalState == null || !incrementalState.isUnchanged(file)) ? file : null;
+            });
+        }
+
+        PageLinks extract(String fileLink) throws IOException {
+            File file = fileOf(fileLink);
+            PageLinks page = new PageLinks(file);
+            if (file.exists()) {
+                page.exists = true;
+                try {
+                    if (incrementalState != null) {
+                        IncrementalState.Page previous = incrementalState.unchanged(file);
+                        if (previous != null) {
+                            metrics.fileUnchanged();
+                            return page.reuse(previous);
+                        }
                     }
-                } else if (!(ignoreHostRegexs.stream().filter(host::matches).collect(Collectors.toList()).isEmpty())) {
-                    logMsg(INFO, printWriter, "The host destination is configured to be ignored: {}", host);
-                    if (failOnIgnoredHost) {
-                        badLinks.add(link);
+                    long start = System.nanoTime();
+                    PageReader.Content content = pageReader.read(fileLink, file);
+                    String hash = null;
+                    if (incrementalState != null) {
+                        hash = content.hash();
+                        IncrementalState.Page previous = incrementalState.sameContent(file, hash);
+                        if (previous != null) {
+                            metrics.fileUnchanged();
+                            return page.reuse(previous);
+                        }
                     }
-                } else {
-                    try {
-                        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                        connection.setRequestMethod("HEAD");
-                        if (httpURLConnectionTimeout >= 0) {
-                            connection.setConnectTimeout(httpURLConnectionTimeout);
+                    String html = content.text();
+                    File parent = file.getParentFile();
+                    LinkExtractor extractor = file.getName().toLowerCase(Locale.ENGLISH).endsWith(".css") ? CSS_SCANNER : linkExtractor;
+                    extractor.extract(html, new LinkExtractor.LinkHandler() {
+                        @Override
+                        public void link(String elementName, String attributeName, String link) {
+                            if (link.startsWith("javascript:") || link.startsWith("mailto:") || link.startsWith("data:")) {
+                                page.ignored.add(link);
+                                return;
+                            }
+                            if (link.startsWith("//")) {
+                                // a protocol-relative URL, e.g. of a CDN; the page is not being served, so pick one
+                                link = "http:" + link;
+                            }
+                            // IF this is a local resource link,
+                            // THEN make it relative to the starting directory.
+                            if (!URL_VALIDATOR.isValid(link)) {
+                                int fragmentStart = link.indexOf('#');
+                                // a query, e.g. style.css?v=3 or font.eot?#iefix, does not change which file is read
+                                int queryStart = link.indexOf('?');
+                                int pathEnd = fragmentStart < 0 ? link.length() : fragmentStart;
+                                if (queryStart >= 0 && queryStart < pathEnd) {
+                                    pathEnd = queryStart;
+                                }
+                                String fragment = fragmentStart >= 0 && fragmentStart < link.length() - 1 ? link.substring(fragmentStart) : null;
+                                if (pathEnd == 0) {
+                                    // this page, or a fragment of it; there is nothing new to crawl
+                                    if (fragment != null) {
+                                        page.fragments.add(fragment);
+                                    }
+                                    return;
+                                }
+                                String target = canonicalPath(new File(parent, link.substring(0, pathEnd)));
+                                if (fragment != null) {
+                                    page.fragments.add(target + fragment);
+                                }
+                                link = target;
+                            }
+                            page.links.add(link);
                         }
-                        connection.connect();
-                        int responseCode = connection.getResponseCode();
-                        if (300 <= responseCode && responseCode < 400) {
-                            logMsg(INFO, printWriter, "Got response code {} for URL: {}", responseCode, url);
-                        } else if (responseCode != HttpURLConnection.HTTP_OK) {
-                            logMsg(WARN, printWriter, "Got response code {} for URL: {}", responseCode, url);
-                            addBadUrlIfConfigured(link, failOnBadUrls, badLinks);
+
+                        @Override
+                        public void anchor(String name) {
+                            page.anchors.add(name);
                         }
-                    } catch (InterruptedIOException | ConnectException | UnknownHostException exception) {
-                        logMsg(WARN, printWriter, "Cannot connect to URL: {}", url);
-                        logMsg(DEBUG, printWriter, "Source:", exception);
-                        addBadUrlIfConfigured(link, failOnBadUrls, badLinks);
-                    } catch (IOException exception) {
-                        logMsg(WARN, printWriter, "Problem with URL: {}", url);
-                        logMsg(DEBUG, printWriter, "Source:", exception);
-                        addBadUrlIfConfigured(link, failOnBadUrls, badLinks);
+                    });
+                    metrics.fileParsed(file, content.length(), System.nanoTime() - start);
+                    if (incrementalState != null) {
+                        incrementalState.record(file, hash, page.links, page.ignored, page.anchors, page.fragments);
                     }
+                } catch (IOException | UncheckedIOException e) {
+                    throw new IOException("file cannot be read: " + file, e);
                 }
             } else {
-                logMsg(INFO, printWriter, "Only http* supported; not handling URL: {}", url);
+                metrics.fileMissing();
             }
-        } catch (MalformedURLException exception) {
-            logMsg(WARN, printWriter, "Bad URL: {}", link, exception);
-            addBadUrlIfConfigured(link, failOnBadUrls, badLinks);
+            return page;
         }
     }
 
-    private static void addBadUrlIfConfigured(String link, boolean failOnBadUrls, List<String> badLinks) {
-        if (failOnBadUrls) {
-            badLinks.add(link);
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
     private static void processLinkAsFile(
-            PrintWriter printWriter,
+            CrawlRun run,
             String fileLink,
-            String defaultFile,
-            List<String> todoListLinks,
-            Multimap<String, File> linksToSourceFiles,
-            List<String> badLinks
-    ) throws IOException {
-        logMsg(INFO, printWriter, "Processing File: {}", fileLink);
-        File file = new File(fileLink);
-        logMsg(DEBUG, printWriter, "file = {}", file.getAbsolutePath());
-        if (file.isDirectory()) {
-            file = new File(file, defaultFile);
-        }
-        logMsg(DEBUG, printWriter, "file = {}", file.getAbsolutePath());
-        if (file.exists()) {
-            logMsg(DEBUG, printWriter, "file does exist");
-            try {
-                Document document = Jsoup.parse(file, "UTF-8", file.getParentFile().getAbsolutePath());
-                for (String elementName : ELEMENTS_TO_ATTRIBUTES.keySet()) {
-                    log.trace("elementName = {}", elementName);
-                    Elements elements = document.select(elementName);
-                    String attributeName = ELEMENTS_TO_ATTRIBUTES.get(elementName);
-                    for (Element element : elements) {
-                        String link = element.attr(attributeName);
-                        if (link.startsWith("javascript:") || link.startsWith("mailto:")) {
-                            logMsg(DEBUG, printWriter, "Ignoring: {}", link);
-                        } else {
-                            // IF this is a local resource link,
-                            // THEN make it relative to the starting directory.
-                            if (!URL_VALIDATOR.isValid(link)) {
-                                String linkWithoutFragment = link.replaceFirst("#.*", "");
-                                link = new File(file.getParent(), linkWithoutFragment).getCanonicalPath();
-                            }
-                            if (todoListLinks.contains(link)) {
-                                logMsg(DEBUG, printWriter, "Already marked: {}", link);
-                            } else {
-                                todoListLinks.add(link);
-                            }
-                            linksToSourceFiles.put(link, file);
-                        }
+            PageLinks page,
+            CrawlFrontier frontier,
+            LinkGraph linkGraph,
+            List<LinkReport> reports,
+            Map<String, LinkReport> anchorChecks
+    ) {
+        ReportWriter report = run.report;
+        CrawlMetrics metrics = run.metrics;
+        report.log(INFO, "Processing File: {}", fileLink);
+        if (report.isEnabled(DEBUG)) {
+            report.log(DEBUG, "file = {}", page.file.getAbsolutePath());
+        }
+        if (page.exists) {
+            report.log(DEBUG, "file does exist");
+            if (page.unchanged) {
+                report.log(DEBUG, "file is unchanged since the last run");
+            }
+            for (String link : page.ignored) {
+                report.log(DEBUG, "Ignoring: {}", link);
+            }
+            metrics.linksExtracted(page.links.size());
+            for (String link : page.links) {
+                if (frontier.offer(link)) {
+                    if (URL_VALIDATOR.isValid(link)) {
+                        // in the background from now on, rather than once the frontier gets to it, which in priority order is after every local file
+                        checkUrl(run, link);
                     }
+                } else {
+                    metrics.dedupHit();
+                    report.log(DEBUG, "Already marked: {}", link);
                 }
-            } catch (IOException e) {
-                throw new IOException("file cannot be read: " + file, e);
+                linkGraph.add(link, page.file);
+            }
+            run.anchorIndex.add(fileLink, page.file.getName(), page.anchors);
+            for (String fragmentLink : page.fragments) {
+                // fragments of this page are written without the page
+                String link = fragmentLink.charAt(0) == '#' ? fileLink + fragmentLink : fragmentLink;
+                LinkReport anchorCheck = anchorChecks.get(link);
+                if (anchorCheck == null) {
+                    int fragmentStart = link.lastIndexOf('#');
+                    anchorCheck = new LinkReport(link, link.substring(0, fragmentStart), link.substring(fragmentStart + 1));
+                    anchorChecks.put(link, anchorCheck);
+                    reports.add(anchorCheck);
+                    // a page that has been read already, such as this one, can be judged now rather than once the crawl is done
+                    if (run.settings.failOnBadAnchors && run.anchorIndex.isMissing(anchorCheck.page, anchorCheck.anchor)) {
+                        run.found(link);
+                    }
+                }
+                anchorCheck.sources.add(page.file);
             }
         } else {
-            logMsg(DEBUG, printWriter, "file does NOT exist");
-            badLinks.add(fileLink);
+            report.log(DEBUG, "file does NOT exist");
+            reports.add(new LinkReport(fileLink, null));
+        }
+    }
+
+    /**
+     * The result of reading a single local file.
+     */
+    private static class PageLinks {
+        final File file;
+        final List<String> links = new ArrayList<>();
+        final List<String> ignored = new ArrayList<>();
+        final Set<String> anchors = new HashSet<>();
+        final List<String> fragments = new ArrayList<>();
+        boolean exists;
+        boolean unchanged;
+
+        PageLinks(File file) {
+            this.file = file;
+        }
+
+        PageLinks reuse(IncrementalState.Page previous) {
+            links.addAll(previous.links);
+            ignored.addAll(previous.ignored);
+            anchors.addAll(previous.anchors);
+            fragments.addAll(previous.fragments);
+            unchanged = true;
+            return this;
+        }
+    }
+
+    /**
+     * A link that is bad, or may turn out to be once its URL check completes or the page its anchor is in has been read.
+     */
+    static class LinkReport {
+        final String link;
+        final Future<UrlCheckResult> urlCheck;
+        final String page;
+        final String anchor;
+        final List<File> sources = new ArrayList<>();
+
+        LinkReport(String link, Future<UrlCheckResult> urlCheck) {
+            this.link = link;
+            this.urlCheck = urlCheck;
+            this.page = null;
+            this.anchor = null;
+        }
+
+        LinkReport(String link, String page, String anchor) {
+            this.link = link;
+            this.urlCheck = null;
+            this.page = page;
+            this.anchor = anchor;
         }
     }
 }
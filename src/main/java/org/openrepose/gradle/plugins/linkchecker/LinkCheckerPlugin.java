@@ -2,6 +2,7 @@ package org.openrepose.gradle.plugins.linkchecker;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.util.GradleVersion;
 
 /**
  * Defines the Link Checker Plugin.
@@ -11,7 +12,16 @@ public class LinkCheckerPlugin implements Plugin<Project> {
     @Override
     public void apply(Project project) {
         LinkCheckerPluginExtension linkCheckerPluginExtension = project.getExtensions().create("linkchecker", LinkCheckerPluginExtension.class, project);
-        LinkCheckerPluginTask linkCheckerPluginTask = project.getTasks().create("linkchecker", LinkCheckerPluginTask.class);
+        LinkCheckerPluginTask linkCheckerPluginTask = project.getTasks().create("linkchecker", taskType());
         linkCheckerPluginTask.setExtension(linkCheckerPluginExtension);
     }
+
+    /**
+     * @return the task that checks roots with the worker API if this version of Gradle has it, or one at a time if not
+     */
+    static Class<? extends LinkCheckerPluginTask> taskType() {
+        return GradleVersion.current().compareTo(GradleVersion.version("4.0")) >= 0
+                ? LinkCheckerWorkerTask.class
+                : LinkCheckerPluginTask.class;
+    }
 }
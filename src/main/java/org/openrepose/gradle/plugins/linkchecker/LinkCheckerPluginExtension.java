@@ -1,16 +1,20 @@
 package org.openrepose.gradle.plugins.linkchecker;
 
 import org.gradle.api.Project;
+import org.gradle.api.logging.LogLevel;
 import org.gradle.internal.impldep.org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class LinkCheckerPluginExtension {
 
     /**
-     * The directory that will be used for UP-TO-DATE checks.
+     * The directory that will be used for UP-TO-DATE checks and build cache keys.
      * If the start file is not absolute, then it is assumed to be relative to here.
      */
     public File inputDir;
@@ -27,6 +31,13 @@ public class LinkCheckerPluginExtension {
      */
     public File startFile = new File(defaultFile);
 
+    /**
+     * More files to start link checking from, along with the {@link #startFile}, e.g. the roots of separate manuals.
+     * On Gradle 4.0 or later, each one is checked as a separate unit of work, in parallel with the others; a file
+     * reachable from more than one of them is still only checked once.
+     */
+    public Collection<File> startFiles = new ArrayList<>();
+
     /**
      * Should this plugin make your build fail if it encounters links to {@code localhost}. Typically, depending on
      * something local to the build would hamper the portability of the build
@@ -48,7 +59,15 @@ public class LinkCheckerPluginExtension {
     public boolean failOnBadUrls = false;
 
     /**
-     * Sets a specified timeout value, in milliseconds, to be used when opening a communications link to a non-local URL.
+     * Should this plugin make your build fail if a link to a local page has a fragment (e.g. {@code page.html#usage})
+     * that does not match the {@code id} of any element, or the {@code name} of any {@code a} element, in that page.
+     * Missing anchors are always logged; this is off by default so that upgrading does not break existing builds.
+     */
+    public boolean failOnBadAnchors = false;
+
+    /**
+     * Sets a specified timeout value, in milliseconds, to be used when opening a communications link to, and reading
+     * the response from, a non-local URL.
      * A timeout of zero is interpreted as an infinite timeout.
      * A timeout of less than zero is interpreted to use the system timeout.
      */
@@ -59,6 +78,126 @@ public class LinkCheckerPluginExtension {
      */
     public Collection<String> ignoreHostRegexs = new ArrayList<>();
 
+    /**
+     * The most URLs that will be checked at the same time.
+     */
+    public int maxConcurrentUrlChecks = 16;
+
+    /**
+     * The most URLs on any one host that will be checked at the same time.
+     */
+    public int maxConcurrentUrlChecksPerHost = 4;
+
+    /**
+     * The total time, in milliseconds, that may be spent checking URLs.
+     * URLs that have not been checked once this runs out are treated as if they could not be reached.
+     * A budget of zero or less is interpreted as no limit.
+     */
+    public long urlCheckTimeBudget = -1;
+
+    /**
+     * The most redirects that will be followed from a URL before it is treated as a problem.
+     * Each hop is only requested once per build, however many URLs redirect through it.
+     * If this is zero or less, then redirects are not followed at all, and a redirect is treated as a good response even
+     * if it leads to a missing page; note that this plugin used to follow redirects within the same protocol.
+     */
+    public int maxRedirects = 10;
+
+    /**
+     * How URLs are checked.
+     * Either {@code live}, which checks them over the network, {@code record}, which does the same and also writes the
+     * results to the {@link #urlRecordingFile}, or {@code replay}, which never goes to the network and takes the results
+     * from the recording instead. When replaying, URLs that are not in the recording are listed separately, and are
+     * not bad links.
+     */
+    public String urlCheckMode = "live";
+
+    /**
+     * This is the file that URL checks are recorded to, or replayed from; it is meant to be kept under version control.
+     */
+    public File urlRecordingFile;
+
+    /**
+     * This is the file where the results of URL checks are remembered between builds.
+     * A remembered good URL is not checked again until it expires, so a link that breaks in the meantime is not noticed
+     * until then; caching is therefore off unless this is set. The file can be shared by several projects, as each
+     * merges its results into it.
+     * If this is {@code null}, then every URL is checked on every build.
+     */
+    public File urlCacheFile;
+
+    /**
+     * How long, in milliseconds, a good URL is remembered before it is checked again.
+     */
+    public long urlCacheSuccessTtl = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * How long, in milliseconds, a bad URL is remembered before it is checked again.
+     */
+    public long urlCacheFailureTtl = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The most URL results to remember; the ones checked longest ago are forgotten first.
+     */
+    public int urlCacheMaxEntries = 100_000;
+
+    /**
+     * This is the file where the links found in each local file are remembered between builds, so that only the files
+     * that have changed need to be parsed again.
+     * If this is {@code null}, then every file is parsed on every build.
+     */
+    public File incrementalStateFile;
+
+    /**
+     * The number of links (from a file to a link) to keep in memory; the rest are written to a temporary file.
+     * Each one takes 8 bytes in memory, so this is only worth setting for trees with millions of links.
+     * If this is less than one, then they are all kept in memory.
+     */
+    public int maxLinkEdgesInMemory = -1;
+
+    /**
+     * The number of threads used to read and parse local files.
+     * The results are the same regardless of this setting; only the time it takes to get them changes.
+     */
+    public int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * How links are found in local files.
+     * Either {@code jsoup}, which builds a full DOM of each file, or {@code streaming}, which scans each file once
+     * without building a DOM and so uses far less memory on large files.
+     * Both find the same links in well-formed HTML.
+     */
+    public String linkExtractor = "jsoup";
+
+    /**
+     * The elements that hold links, and the attribute, or list of attributes, of each that hold them.
+     * All of them are found in a single pass over each file. Links in local {@code .css} files are always found, in
+     * {@code url(...)} and {@code @import}. A {@code <link>} whose {@code rel} is {@code preconnect} or
+     * {@code dns-prefetch} is skipped, as it points at a server rather than at anything that has to resolve.
+     */
+    public Map<String, ?> linkAttributes = new LinkedHashMap<>(LinkRules.DEFAULTS);
+
+    /**
+     * The most bytes of upcoming local files to read ahead on a background thread, so that parsing does not wait for the
+     * disk. Zero or less turns reading ahead off.
+     */
+    public long readAheadBytes = 16 * 1024 * 1024;
+
+    /**
+     * The order links are checked in.
+     * Either {@code discovery}, which checks them in the order they are found, or {@code priority}, which checks local
+     * files that have changed since the last build first, then the other local files, and URLs last, so that mistakes
+     * in the pages being worked on are found before waiting on the network. Either way, URLs are checked in the
+     * background from the moment they are found.
+     */
+    public String crawlOrder = "discovery";
+
+    /**
+     * The most bad links to find before the check stops early, without checking whatever is left, and fails the build.
+     * This is ignored if {@link #reportOnly} is set. If this is zero or less, then everything is always checked.
+     */
+    public int maxBadLinks = -1;
+
     /**
      * Should this plugin make your build fail altogether, or only report its findings.
      */
@@ -69,6 +208,25 @@ public class LinkCheckerPluginExtension {
      */
     public File logFile;
 
+    /**
+     * The lowest level of message written to the log file, e.g. {@code LogLevel.DEBUG} to keep a full trace of the
+     * check without running the whole build with {@code --debug}.
+     * If this is {@code null}, then the file gets the same messages as the Gradle log.
+     */
+    public LogLevel logFileLevel;
+
+    /**
+     * This is the file where the counts and timings of the link check are written as JSON.
+     * If this is {@code null}, then they are not written.
+     */
+    public File metricsFile;
+
+    /**
+     * Should a summary of the counts and timings be added to the build scan as custom values.
+     * This has no effect if the build scan plugin is not applied.
+     */
+    public boolean publishMetricsToBuildScan = false;
+
     /**
      * This class should not be instantiated without any arguments.
      */
@@ -80,5 +238,8 @@ public class LinkCheckerPluginExtension {
      */
     public LinkCheckerPluginExtension(@NotNull Project project) {
         logFile = new File(project.getBuildDir(), "reports/linkchecker.txt");
+        metricsFile = new File(project.getBuildDir(), "reports/linkchecker.json");
+        incrementalStateFile = new File(project.getBuildDir(), "linkchecker/incremental-state.txt");
+        urlRecordingFile = new File(project.getProjectDir(), "linkchecker-urls.txt");
     }
 }
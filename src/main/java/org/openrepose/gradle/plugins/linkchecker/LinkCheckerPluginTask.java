@@ -1,95 +1,193 @@
 package org.openrepose.gradle.plugins.linkchecker;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.logging.LogLevel;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.util.GradleVersion;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.gradle.api.logging.LogLevel.WARN;
 
+@CacheableTask
 public class LinkCheckerPluginTask extends DefaultTask {
 
     static final Logger log = Logging.getLogger(LinkCheckerPluginTask.class);
 
     private LinkCheckerPluginExtension linkCheckerPluginExtension;
 
+    public LinkCheckerPluginTask() {
+        // the build cache, and cacheIf with a reason, only exist from Gradle 3.4
+        if (GradleVersion.current().compareTo(GradleVersion.version("3.4")) >= 0) {
+            getOutputs().cacheIf("the result does not depend on live URL checks", task -> isReproducible());
+        }
+    }
+
+    /**
+     * @return true if checking the same inputs again would give the same result, i.e. URLs are either replayed from a
+     * recording, or cannot make the check fail; a cached result must not outlive a URL that has since broken, and a
+     * recording is only worth anything if it was just made over the network
+     */
+    boolean isReproducible() {
+        String mode = linkCheckerPluginExtension.urlCheckMode;
+        if (UrlRecording.RECORD.equals(mode)) {
+            return false;
+        }
+        return UrlRecording.REPLAY.equals(mode) || !linkCheckerPluginExtension.failOnBadUrls;
+    }
+
     public void setExtension(LinkCheckerPluginExtension extension) {
         linkCheckerPluginExtension = extension;
     }
 
     @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
     public File getInputDirectory() {
         return linkCheckerPluginExtension.inputDir;
     }
 
+    /**
+     * @return the paths of the files to start from, relative to the input directory where possible, so that the same
+     * site checked from another checkout has the same inputs
+     */
+    @Input
+    public List<String> getStartPaths() {
+        List<String> startPaths = new ArrayList<>();
+        for (File root : getRoots()) {
+            startPaths.add(linkCheckerPluginExtension.inputDir.toPath().relativize(root.toPath()).toString());
+        }
+        return startPaths;
+    }
+
+    /**
+     * @return the settings that change which links are reported as bad
+     */
+    @Input
+    public Map<String, Object> getCheckSettings() {
+        Map<String, Object> checkSettings = new LinkedHashMap<>();
+        checkSettings.put("defaultFile", linkCheckerPluginExtension.defaultFile);
+        checkSettings.put("failOnLocalHost", linkCheckerPluginExtension.failOnLocalHost);
+        checkSettings.put("failOnIgnoreHost", linkCheckerPluginExtension.failOnIgnoreHost);
+        checkSettings.put("failOnBadUrls", linkCheckerPluginExtension.failOnBadUrls);
+        checkSettings.put("failOnBadAnchors", linkCheckerPluginExtension.failOnBadAnchors);
+        checkSettings.put("httpURLConnectionTimeout", linkCheckerPluginExtension.httpURLConnectionTimeout);
+        checkSettings.put("ignoreHostRegexs", new ArrayList<>(linkCheckerPluginExtension.ignoreHostRegexs));
+        checkSettings.put("urlCheckTimeBudget", linkCheckerPluginExtension.urlCheckTimeBudget);
+        checkSettings.put("maxRedirects", linkCheckerPluginExtension.maxRedirects);
+        checkSettings.put("urlCheckMode", linkCheckerPluginExtension.urlCheckMode);
+        checkSettings.put("linkExtractor", linkCheckerPluginExtension.linkExtractor);
+        checkSettings.put("linkAttributes", new LinkRules(linkCheckerPluginExtension.linkAttributes).asMap());
+        checkSettings.put("reportOnly", linkCheckerPluginExtension.reportOnly);
+        checkSettings.put("crawlOrder", linkCheckerPluginExtension.crawlOrder);
+        checkSettings.put("maxBadLinks", linkCheckerPluginExtension.maxBadLinks);
+        checkSettings.put("logFileLevel", String.valueOf(linkCheckerPluginExtension.logFileLevel));
+        return checkSettings;
+    }
+
     @OutputFile
     public File getLogFile() {
         return linkCheckerPluginExtension.logFile;
     }
 
+    @OutputFile
+    @Optional
+    public File getMetricsFile() {
+        return linkCheckerPluginExtension.metricsFile;
+    }
+
+    /**
+     * @return the recording of URL checks, if they are being replayed
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public File getReplayedUrlRecording() {
+        return UrlRecording.REPLAY.equals(linkCheckerPluginExtension.urlCheckMode) && linkCheckerPluginExtension.urlRecordingFile.isFile()
+                ? linkCheckerPluginExtension.urlRecordingFile
+                : null;
+    }
+
+    /**
+     * @return the recording of URL checks, if they are being recorded
+     */
+    @OutputFile
+    @Optional
+    public File getRecordedUrlRecording() {
+        return UrlRecording.RECORD.equals(linkCheckerPluginExtension.urlCheckMode) ? linkCheckerPluginExtension.urlRecordingFile : null;
+    }
+
     /**
      * Executes this task.
      */
     @TaskAction
     void linkcheckerTask() throws IOException, LinkCheckerPluginException {
-        try (PrintWriter printWriter = new PrintWriter(new FileWriter(linkCheckerPluginExtension.logFile))) {
-            logMsg(WARN, printWriter, "This task can take some time to complete.");
-            logMsg(WARN, printWriter, "Run with --info or --debug for more information.");
-            logMsg(WARN, printWriter, "");
-
-            Multimap<String, File> linksToSourceFiles = HashMultimap.create();
-            List<String> badLinks = new ArrayList<>();
-
-            File absoluteStart = linkCheckerPluginExtension.startFile;
-            if (!absoluteStart.isAbsolute()) {
-                absoluteStart = new File(linkCheckerPluginExtension.inputDir, linkCheckerPluginExtension.startFile.getPath());
-            }
-
-            int total = LinkChecker.checkLinks(
-                    printWriter,
-                    absoluteStart,
-                    linkCheckerPluginExtension.defaultFile,
-                    linkCheckerPluginExtension.failOnLocalHost,
-                    linkCheckerPluginExtension.failOnIgnoreHost,
-                    linkCheckerPluginExtension.failOnBadUrls,
-                    linkCheckerPluginExtension.httpURLConnectionTimeout,
-                    linkCheckerPluginExtension.ignoreHostRegexs,
-                    linksToSourceFiles,
-                    badLinks
-            );
-
-            logMsg(WARN, printWriter, "");
-            logMsg(WARN, printWriter, "Processed {} files with {} bad links.", total, badLinks.size());
-            if (!badLinks.isEmpty()) {
-                for (String badLink : badLinks) {
-                    logMsg(WARN, printWriter, "\t" + badLink);
-                    Collection<File> sourceFiles = linksToSourceFiles.get(badLink);
-                    if (!sourceFiles.isEmpty()) {
-                        logMsg(WARN, printWriter, "\tbad link referenced from:");
-                        for (File sourceFile : sourceFiles) {
-                            logMsg(WARN, printWriter, "\t\t" + sourceFile);
+        try (ReportWriter report = ReportWriter.open(linkCheckerPluginExtension.logFile, linkCheckerPluginExtension.logFileLevel)) {
+            report.log(WARN, "This task can take some time to complete.");
+            report.log(WARN, "Run with --info or --debug for more information.");
+            report.log(WARN, "");
+
+            List<File> roots = getRoots();
+            CrawlMetrics metrics = new CrawlMetrics();
+            LinkCheckerSettings settings = LinkCheckerSettings.fromExtension(linkCheckerPluginExtension);
+            int total;
+            List<String> badLinks;
+            try (CrawlRun run = new CrawlRun(report, settings, metrics)) {
+                String runId = run.register();
+                check(runId, roots);
+                total = run.total(roots);
+                badLinks = run.badLinks(roots);
+                run.save();
+
+                try (CrawlMetrics.Phase ignored = metrics.phase("report")) {
+                    Map<String, Set<File>> linksToSourceFiles = run.sourcesOf(roots, badLinks);
+                    report.log(WARN, "");
+                    report.log(WARN, "Processed {} files with {} bad links.", total, badLinks.size());
+                    for (String badLink : badLinks) {
+                        report.log(WARN, "\t" + badLink);
+                        Collection<File> sourceFiles = linksToSourceFiles.getOrDefault(badLink, Collections.emptySet());
+                        if (!sourceFiles.isEmpty()) {
+                            report.log(WARN, "\tbad link referenced from:");
+                            for (File sourceFile : sourceFiles) {
+                                report.log(WARN, "\t\t" + sourceFile);
+                            }
+                        }
+                    }
+                    if (!run.notRecorded.isEmpty()) {
+                        report.log(WARN, "");
+                        report.log(WARN, "{} URLs were not in the recording of URL checks, so were not checked:", run.notRecorded.size());
+                        for (String url : run.notRecorded) {
+                            report.log(WARN, "\t" + url);
                         }
                     }
                 }
+            }
+            writeMetrics(metrics, total, badLinks.size());
+
+            if (!badLinks.isEmpty()) {
                 if (linkCheckerPluginExtension.reportOnly) {
-                    logMsg(WARN, printWriter, "Not failing build for bad links as configured");
+                    report.log(WARN, "Not failing build for bad links as configured");
                 } else {
                     throw new LinkCheckerPluginException("Failing build for bad links as configured.");
                 }
-                printWriter.close();
             }
         } catch (IOException e) {
             log.info("Failed to write output!", e);
@@ -101,18 +199,52 @@ public class LinkCheckerPluginTask extends DefaultTask {
         }
     }
 
-    static void logMsg(LogLevel level, PrintWriter printWriter, String msg) {
-        log.log(level, msg);
-        if (printWriter != null && log.isEnabled(level)) {
-            printWriter.println(msg);
+    /**
+     * Checks each root in turn, and returns once all of them have been checked.
+     */
+    void check(String runId, List<File> roots) {
+        for (File root : roots) {
+            new LinkCheckerWork(runId, root).run();
         }
     }
 
-    static void logMsg(LogLevel level, PrintWriter printWriter, String format, Object... args) {
-        log.log(level, format, args);
-        if (printWriter != null && log.isEnabled(level)) {
-            printWriter.printf(format.replace("{}", "%s"), args);
-            printWriter.println();
+    /**
+     * @return the start file and any others, resolved against the input directory, without duplicates
+     */
+    private List<File> getRoots() {
+        Set<File> roots = new LinkedHashSet<>();
+        roots.add(resolve(linkCheckerPluginExtension.startFile));
+        for (File startFile : linkCheckerPluginExtension.startFiles) {
+            roots.add(resolve(startFile));
         }
+        return new ArrayList<>(roots);
+    }
+
+    private File resolve(File startFile) {
+        return startFile.isAbsolute() ? startFile : new File(linkCheckerPluginExtension.inputDir, startFile.getPath());
+    }
+
+    private void writeMetrics(CrawlMetrics metrics, int total, int badLinks) throws IOException {
+        if (linkCheckerPluginExtension.metricsFile != null) {
+            metrics.writeJson(linkCheckerPluginExtension.metricsFile);
+        }
+        if (linkCheckerPluginExtension.publishMetricsToBuildScan) {
+            Object buildScan = getProject().getRootProject().getExtensions().findByName("buildScan");
+            if (buildScan == null) {
+                log.info("Not publishing link checker metrics; the build scan plugin is not applied.");
+            } else {
+                Map<String, Object> summary = metrics.toMap();
+                publishToBuildScan(buildScan, "linkchecker.links", Integer.toString(total));
+                publishToBuildScan(buildScan, "linkchecker.badLinks", Integer.toString(badLinks));
+                publishToBuildScan(buildScan, "linkchecker.files", summary.get("files").toString());
+                publishToBuildScan(buildScan, "linkchecker.urls", summary.get("urls").toString());
+                publishToBuildScan(buildScan, "linkchecker.phases", summary.get("phases").toString());
+            }
+        }
+    }
+
+    private static void publishToBuildScan(Object buildScan, String name, String value) {
+        // the build scan plugin is not on our compile classpath, so call it the way a build script would
+        InvokerHelper.invokeMethod(buildScan, "value", new Object[]{name, value});
     }
 }
@@ -0,0 +1,99 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The settings that drive a single {@link LinkChecker} run.
+ * <p>
+ * See {@link LinkCheckerPluginExtension} for the meaning of each setting.
+ */
+public class LinkCheckerSettings {
+
+    public String defaultFile = "index.html";
+
+    public boolean failOnLocalHost = true;
+
+    public boolean failOnIgnoredHost = false;
+
+    public boolean failOnBadUrls = false;
+
+    public boolean failOnBadAnchors = false;
+
+    public int httpURLConnectionTimeout = -1;
+
+    public Collection<String> ignoreHostRegexs = new ArrayList<>();
+
+    public int parallelism = 1;
+
+    public String linkExtractor = LinkExtractor.JSOUP;
+
+    public Map<String, ?> linkAttributes = LinkRules.DEFAULTS;
+
+    public long readAheadBytes = 16 * 1024 * 1024;
+
+    public String crawlOrder = CrawlFrontier.DISCOVERY_ORDER;
+
+    public int maxBadLinks = -1;
+
+    public int maxConcurrentUrlChecks = 16;
+
+    public int maxConcurrentUrlChecksPerHost = 4;
+
+    public long urlCheckTimeBudget = -1;
+
+    public int maxRedirects = 10;
+
+    public String urlCheckMode = UrlRecording.LIVE;
+
+    public File urlRecordingFile;
+
+    public File urlCacheFile;
+
+    public long urlCacheSuccessTtl = TimeUnit.DAYS.toMillis(1);
+
+    public long urlCacheFailureTtl = TimeUnit.MINUTES.toMillis(10);
+
+    public int urlCacheMaxEntries = 100_000;
+
+    public File incrementalStateFile;
+
+    public int maxLinkEdgesInMemory = -1;
+
+    /**
+     * Creates the settings for a run configured by the given extension.
+     */
+    static LinkCheckerSettings fromExtension(LinkCheckerPluginExtension extension) {
+        LinkCheckerSettings settings = new LinkCheckerSettings();
+        settings.defaultFile = extension.defaultFile;
+        settings.failOnLocalHost = extension.failOnLocalHost;
+        settings.failOnIgnoredHost = extension.failOnIgnoreHost;
+        settings.failOnBadUrls = extension.failOnBadUrls;
+        settings.failOnBadAnchors = extension.failOnBadAnchors;
+        settings.httpURLConnectionTimeout = extension.httpURLConnectionTimeout;
+        settings.ignoreHostRegexs = extension.ignoreHostRegexs;
+        settings.parallelism = extension.parallelism;
+        settings.linkExtractor = extension.linkExtractor;
+        settings.linkAttributes = extension.linkAttributes;
+        settings.readAheadBytes = extension.readAheadBytes;
+        settings.crawlOrder = extension.crawlOrder;
+        // a report that does not fail the build should be complete
+        settings.maxBadLinks = extension.reportOnly ? -1 : extension.maxBadLinks;
+        settings.maxConcurrentUrlChecks = extension.maxConcurrentUrlChecks;
+        settings.maxConcurrentUrlChecksPerHost = extension.maxConcurrentUrlChecksPerHost;
+        settings.urlCheckTimeBudget = extension.urlCheckTimeBudget;
+        settings.maxRedirects = extension.maxRedirects;
+        settings.urlCheckMode = extension.urlCheckMode;
+        settings.urlRecordingFile = extension.urlRecordingFile;
+        settings.urlCacheFile = extension.urlCacheFile;
+        settings.urlCacheSuccessTtl = extension.urlCacheSuccessTtl;
+        settings.urlCacheFailureTtl = extension.urlCacheFailureTtl;
+        settings.urlCacheMaxEntries = extension.urlCacheMaxEntries;
+        settings.incrementalStateFile = extension.incrementalStateFile;
+        settings.maxLinkEdgesInMemory = extension.maxLinkEdgesInMemory;
+        return settings;
+    }
+}
@@ -0,0 +1,33 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Checks the links from one of the roots of a {@link CrawlRun}.
+ * <p>
+ * This is a unit of work for Gradle's worker API, so it must be public and only takes serializable parameters; it
+ * finds the rest of the run by its id, which is why it has to run in the same process as the task.
+ */
+public class LinkCheckerWork implements Runnable {
+
+    private final String runId;
+    private final File root;
+
+    @Inject
+    public LinkCheckerWork(String runId, File root) {
+        this.runId = runId;
+        this.root = root;
+    }
+
+    @Override
+    public void run() {
+        try {
+            CrawlRun.get(runId).crawl(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to check links from " + root, e);
+        }
+    }
+}
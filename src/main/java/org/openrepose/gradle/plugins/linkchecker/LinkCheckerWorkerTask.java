@@ -0,0 +1,45 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The link checker task for Gradle 4.0 and later, which hands the roots of a {@link CrawlRun} to Gradle's worker API,
+ * so that they are checked in parallel with each other and with the work of other tasks, and the task does not hold
+ * on to its worker while they are checked.
+ * <p>
+ * This is the only class that refers to the worker API, so older versions of Gradle must never load it; see
+ * {@link LinkCheckerPlugin#taskType()}.
+ */
+public class LinkCheckerWorkerTask extends LinkCheckerPluginTask {
+
+    private final WorkerExecutor workerExecutor;
+
+    @Inject
+    public LinkCheckerWorkerTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    /**
+     * Checks each root as a separate unit of work, even if there is only one, and waits for all of them to finish.
+     *
+     * @throws org.gradle.workers.WorkerExecutionException if any of them failed
+     */
+    @Override
+    void check(String runId, List<File> roots) {
+        for (File root : roots) {
+            workerExecutor.submit(LinkCheckerWork.class, config -> {
+                // the work shares the crawl state of the task, so it has to stay in the same class loader
+                config.setIsolationMode(IsolationMode.NONE);
+                config.setDisplayName("Check links from " + root);
+                config.params(runId, root);
+            });
+        }
+        workerExecutor.await();
+    }
+}
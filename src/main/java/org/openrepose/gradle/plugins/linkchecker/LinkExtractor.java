@@ -0,0 +1,62 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.util.Map;
+
+/**
+ * Finds the links in an HTML document.
+ * <p>
+ * Implementations report every element that is configured to hold a link, in document order, along with the value of
+ * each of its link attributes (see {@link LinkRules}). An element that lacks all of them is reported with an empty
+ * value for the first. In the same pass, they report the anchors that a fragment can point to: the {@code id} of any
+ * element, and the {@code name} of an {@code a} element. Implementations must be safe to use from multiple threads at
+ * once.
+ */
+interface LinkExtractor {
+
+    /**
+     * Builds a full DOM with Jsoup and walks it.
+     */
+    String JSOUP = "jsoup";
+
+    /**
+     * Scans the markup once without building a DOM.
+     */
+    String STREAMING = "streaming";
+
+    void extract(String html, LinkHandler handler);
+
+    /**
+     * Receives the links found by a {@link LinkExtractor}.
+     */
+    interface LinkHandler {
+        void link(String element, String attribute, String value);
+
+        default void anchor(String name) {
+        }
+    }
+
+    /**
+     * @param engine               the name of the engine; either {@link #JSOUP} or {@link #STREAMING}
+     * @param elementsToAttributes the elements that hold links, and the attribute of each that holds the link
+     * @return the extractor for the engine
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    static LinkExtractor forEngine(String engine, Map<String, String> elementsToAttributes) {
+        return forEngine(engine, new LinkRules(elementsToAttributes));
+    }
+
+    /**
+     * @param engine the name of the engine; either {@link #JSOUP} or {@link #STREAMING}
+     * @param rules  the attributes that hold links
+     * @return the extractor for the engine
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    static LinkExtractor forEngine(String engine, LinkRules rules) {
+        if (engine == null || JSOUP.equals(engine)) {
+            return new JsoupLinkExtractor(rules);
+        } else if (STREAMING.equals(engine)) {
+            return new StreamingLinkExtractor(rules);
+        }
+        throw new IllegalArgumentException("Unknown link extractor '" + engine + "'; expected '" + JSOUP + "' or '" + STREAMING + "'");
+    }
+}
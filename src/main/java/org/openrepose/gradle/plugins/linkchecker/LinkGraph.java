@@ -0,0 +1,209 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which files link to which links, stored compactly enough for trees of hundreds of thousands of pages.
+ * <p>
+ * Every distinct link and source file path is stored once, in a dictionary, and given an {@code int} id. Each edge is
+ * then just two {@code int}s in a pair of growable arrays, rather than a map entry holding a {@link File}. If a limit
+ * is set on the number of edges kept in memory, the edges beyond it are appended to a temporary file, which is deleted
+ * when the graph is closed.
+ * <p>
+ * Edges are kept in the order they were added, so the sources of a link come back in the order they were found.
+ */
+public class LinkGraph implements Closeable {
+
+    private static final int INITIAL_EDGES = 1024;
+
+    private final int maxEdgesInMemory;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] targets;
+    private int[] sources;
+    private int edgesInMemory;
+    private long edgesSpilled;
+    private File spillFile;
+    private DataOutputStream spill;
+
+    /**
+     * Creates a graph that keeps all of its edges in memory.
+     */
+    public LinkGraph() {
+        this(-1);
+    }
+
+    /**
+     * @param maxEdgesInMemory the number of edges to keep in memory before spilling them to disk, or less than one to
+     *                         keep them all in memory
+     */
+    public LinkGraph(int maxEdgesInMemory) {
+        this.maxEdgesInMemory = maxEdgesInMemory;
+        int initialEdges = maxEdgesInMemory > 0 ? Math.min(INITIAL_EDGES, maxEdgesInMemory) : INITIAL_EDGES;
+        this.targets = new int[initialEdges];
+        this.sources = new int[initialEdges];
+    }
+
+    /**
+     * Records that the source file links to the link.
+     *
+     * @throws UncheckedIOException if the edges could not be spilled to disk
+     */
+    public void add(String link, File source) {
+        if (edgesInMemory == targets.length) {
+            if (maxEdgesInMemory > 0 && edgesInMemory >= maxEdgesInMemory) {
+                spill();
+            } else {
+                int capacity = edgesInMemory * 2;
+                if (maxEdgesInMemory > 0) {
+                    capacity = Math.min(capacity, maxEdgesInMemory);
+                }
+                targets = Arrays.copyOf(targets, capacity);
+                sources = Arrays.copyOf(sources, capacity);
+            }
+        }
+        targets[edgesInMemory] = id(link);
+        sources[edgesInMemory] = id(source.getPath());
+        edgesInMemory++;
+    }
+
+    private int id(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private void spill() {
+        try {
+            if (spill == null) {
+                spillFile = Files.createTempFile("linkchecker-graph", ".bin").toFile();
+                spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile.toPath())));
+            }
+            for (int i = 0; i < edgesInMemory; i++) {
+                spill.writeInt(targets[i]);
+                spill.writeInt(sources[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the link graph to disk", e);
+        }
+        edgesSpilled += edgesInMemory;
+        edgesInMemory = 0;
+    }
+
+    /**
+     * @return the number of edges, including any duplicates
+     */
+    public long size() {
+        return edgesSpilled + edgesInMemory;
+    }
+
+    /**
+     * @return the number of edges that have been written to disk
+     */
+    long spilled() {
+        return edgesSpilled;
+    }
+
+    /**
+     * Finds the files that link to each of the links, with one pass over the edges.
+     *
+     * @return the distinct sources of each of the links, in the order they were found; links without any are left out
+     */
+    public Map<String, Set<File>> sourcesOf(Collection<String> links) throws IOException {
+        Map<Integer, Set<Integer>> wanted = new LinkedHashMap<>();
+        for (String link : links) {
+            Integer id = ids.get(link);
+            if (id != null) {
+                wanted.put(id, new LinkedHashSet<>());
+            }
+        }
+        if (!wanted.isEmpty()) {
+            forEachEdge((target, source) -> {
+                Set<Integer> found = wanted.get(target);
+                if (found != null) {
+                    found.add(source);
+                }
+            });
+        }
+
+        Map<String, Set<File>> sourcesByLink = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : wanted.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                Set<File> files = new LinkedHashSet<>();
+                for (int source : entry.getValue()) {
+                    files.add(new File(names.get(source)));
+                }
+                sourcesByLink.put(names.get(entry.getKey()), files);
+            }
+        }
+        return sourcesByLink;
+    }
+
+    /**
+     * Visits every edge, in the order they were added.
+     */
+    public void forEach(EdgeConsumer consumer) throws IOException {
+        forEachEdge((target, source) -> consumer.edge(names.get(target), new File(names.get(source))));
+    }
+
+    private void forEachEdge(IdConsumer consumer) throws IOException {
+        if (spill != null) {
+            spill.flush();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile.toPath())))) {
+                for (long i = 0; i < edgesSpilled; i++) {
+                    consumer.edge(in.readInt(), in.readInt());
+                }
+            }
+        }
+        for (int i = 0; i < edgesInMemory; i++) {
+            consumer.edge(targets[i], sources[i]);
+        }
+    }
+
+    /**
+     * Deletes the edges that were spilled to disk, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            try {
+                spill.close();
+            } finally {
+                Files.deleteIfExists(spillFile.toPath());
+                spill = null;
+            }
+        }
+    }
+
+    /**
+     * Receives the edges of a {@link LinkGraph}.
+     */
+    public interface EdgeConsumer {
+        void edge(String link, File source);
+    }
+
+    private interface IdConsumer {
+        void edge(int target, int source);
+    }
+}
@@ -0,0 +1,170 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Which attributes of which elements hold links, i.e. what a {@link LinkExtractor} reports.
+ * <p>
+ * An element can have several link attributes (e.g. {@code img} has {@code src} and {@code srcset}); they are looked
+ * up together, so the document is still only visited once however many rules there are. A {@code srcset} holds
+ * several links, which are reported one by one.
+ */
+class LinkRules {
+
+    /**
+     * The rules used unless others are configured.
+     */
+    static final Map<String, List<String>> DEFAULTS;
+
+    static {
+        Map<String, List<String>> defaults = new LinkedHashMap<>();
+        defaults.put("a", Collections.singletonList("href"));
+        defaults.put("area", Collections.singletonList("href"));
+        defaults.put("frame", Collections.singletonList("src"));
+        defaults.put("iframe", Collections.singletonList("src"));
+        defaults.put("img", Collections.unmodifiableList(Arrays.asList("src", "srcset")));
+        defaults.put("link", Collections.singletonList("href"));
+        defaults.put("script", Collections.singletonList("src"));
+        defaults.put("source", Collections.unmodifiableList(Arrays.asList("src", "srcset")));
+        DEFAULTS = Collections.unmodifiableMap(defaults);
+    }
+
+    private static final String SRCSET = "srcset";
+    private static final List<String> RESOURCE_HINTS = Arrays.asList("preconnect", "dns-prefetch");
+
+    private final Map<String, List<String>> attributesByElement = new HashMap<>();
+
+    /**
+     * @param elementsToAttributes the elements that hold links, and the attribute, or attributes, of each that hold
+     *                             them; names are matched ignoring case
+     */
+    LinkRules(Map<String, ?> elementsToAttributes) {
+        for (Map.Entry<String, ?> rule : elementsToAttributes.entrySet()) {
+            List<String> attributes = new ArrayList<>();
+            if (rule.getValue() instanceof Collection) {
+                for (Object attribute : (Collection<?>) rule.getValue()) {
+                    attributes.add(attribute.toString().toLowerCase(Locale.ENGLISH));
+                }
+            } else {
+                attributes.add(rule.getValue().toString().toLowerCase(Locale.ENGLISH));
+            }
+            if (!attributes.isEmpty()) {
+                attributesByElement.put(rule.getKey().toLowerCase(Locale.ENGLISH), Collections.unmodifiableList(attributes));
+            }
+        }
+    }
+
+    /**
+     * @param element the lower case name of the element
+     * @return the link attributes of the element, in the order they are reported, or {@code null} if it has none
+     */
+    List<String> attributesOf(String element) {
+        return attributesByElement.get(element);
+    }
+
+    /**
+     * @return the rules, with the elements in alphabetical order
+     */
+    Map<String, List<String>> asMap() {
+        return new TreeMap<>(attributesByElement);
+    }
+
+    /**
+     * @return a short string that changes whenever the rules do
+     */
+    String fingerprint() {
+        return Integer.toHexString(asMap().toString().hashCode());
+    }
+
+    /**
+     * A {@code <link>} that only asks the browser to connect to an origin early, i.e. whose {@code rel} is
+     * {@code preconnect} or {@code dns-prefetch}, points at a server rather than at anything on it, so there is nothing
+     * there that has to resolve (e.g. {@code https://fonts.gstatic.com} answers 404); it is not a link.
+     *
+     * @param element the lower case name of the element
+     * @param rel     the {@code rel} attribute of the element, or {@code null} if it has none
+     * @return true if the element is such a hint
+     */
+    static boolean isResourceHint(String element, String rel) {
+        if (rel == null || !"link".equals(element)) {
+            return false;
+        }
+        boolean hint = false;
+        for (String type : rel.trim().toLowerCase(Locale.ENGLISH).split("\\s+")) {
+            if (!RESOURCE_HINTS.contains(type)) {
+                return false;
+            }
+            hint = true;
+        }
+        return hint;
+    }
+
+    /**
+     * Reports the links of an element that has been found to have link attributes.
+     *
+     * @param values the value of each of the element's link attributes, in the order of {@link #attributesOf(String)},
+     *               with {@code null} for the ones it does not have
+     */
+    static void report(LinkExtractor.LinkHandler handler, String element, List<String> attributes, String[] values) {
+        boolean reported = false;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            reported = true;
+            if (SRCSET.equals(attributes.get(i))) {
+                for (String candidate : srcsetUrls(values[i])) {
+                    handler.link(element, SRCSET, candidate);
+                }
+            } else {
+                handler.link(element, attributes.get(i), values[i]);
+            }
+        }
+        if (!reported) {
+            handler.link(element, attributes.get(0), "");
+        }
+    }
+
+    /**
+     * @return the URL of each image candidate in a {@code srcset}, without its width or density descriptor
+     */
+    static List<String> srcsetUrls(String srcset) {
+        List<String> urls = new ArrayList<>();
+        int length = srcset.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && (Character.isWhitespace(srcset.charAt(pos)) || srcset.charAt(pos) == ',')) {
+                pos++;
+            }
+            int urlStart = pos;
+            while (pos < length && !Character.isWhitespace(srcset.charAt(pos))) {
+                pos++;
+            }
+            int urlEnd = pos;
+            // a comma straight after the URL ends the candidate; otherwise skip the descriptors up to the next one
+            boolean endsWithComma = false;
+            while (urlEnd > urlStart && srcset.charAt(urlEnd - 1) == ',') {
+                urlEnd--;
+                endsWithComma = true;
+            }
+            if (urlEnd > urlStart) {
+                urls.add(srcset.substring(urlStart, urlEnd));
+            }
+            if (!endsWithComma) {
+                while (pos < length && srcset.charAt(pos) != ',') {
+                    pos++;
+                }
+            }
+        }
+        return urls;
+    }
+}
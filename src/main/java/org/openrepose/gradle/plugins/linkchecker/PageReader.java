@@ -0,0 +1,245 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads local files for the parse stage, and works out how their text is encoded.
+ * <p>
+ * Small files are read through a {@link FileChannel} into a buffer that each thread reuses, rather than a new array per
+ * file; files of at least {@link #DEFAULT_MAP_THRESHOLD} bytes are memory mapped instead. The charset comes from a
+ * byte order mark if there is one, then from a {@code <meta charset>} (or {@code http-equiv}) in the first kilobyte,
+ * and is UTF-8 otherwise.
+ * <p>
+ * Files can also be read ahead on a background thread, up to a budget of bytes held in memory, so that parsing does
+ * not have to wait for the disk.
+ */
+class PageReader implements Closeable {
+
+    static final int DEFAULT_MAP_THRESHOLD = 1 << 20;
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int SNIFF_LENGTH = 1024;
+    private static final int HASH_CHUNK = 8192;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([a-z0-9_:.\\-]+)", Pattern.CASE_INSENSITIVE);
+    private static final byte[] PENDING = new byte[0];
+
+    private final int mapThreshold;
+    private final long readAheadBytes;
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER));
+    private final ConcurrentMap<String, byte[]> readAhead = new ConcurrentHashMap<>();
+    private final AtomicLong readAheadSize = new AtomicLong();
+    private final ExecutorService readAheadExecutor;
+
+    /**
+     * @param readAheadBytes the most bytes to hold in memory that were read ahead, or zero or less to not read ahead
+     */
+    PageReader(long readAheadBytes) {
+        this(readAheadBytes, DEFAULT_MAP_THRESHOLD);
+    }
+
+    PageReader(long readAheadBytes, int mapThreshold) {
+        this.mapThreshold = mapThreshold;
+        this.readAheadBytes = readAheadBytes;
+        this.readAheadExecutor = readAheadBytes > 0 ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "linkchecker-read-ahead");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Reads the files behind the links on a background thread, until the budget is spent.
+     * Links that are read before the background thread gets to them are just read again; nothing waits.
+     *
+     * @param links       the links that will be read soon, in the order they will be read
+     * @param resolveFile the file to read for a link, or {@code null} if there is nothing to read for it
+     */
+    void readAhead(List<String> links, Function<String, File> resolveFile) {
+        if (readAheadExecutor == null || links.isEmpty()) {
+            return;
+        }
+        for (String link : links) {
+            readAhead.putIfAbsent(link, PENDING);
+        }
+        try {
+            readAheadExecutor.execute(() -> {
+                for (String link : links) {
+                    if (readAhead.get(link) == PENDING) {
+                        readAheadOne(link, resolveFile);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed; the links are read when they are needed
+        }
+    }
+
+    private void readAheadOne(String link, Function<String, File> resolveFile) {
+        byte[] content = null;
+        try {
+            File file = resolveFile.apply(link);
+            // only this thread adds to the size, so the budget can not be overshot by much
+            if (file != null && file.length() < mapThreshold && readAheadSize.get() + file.length() <= readAheadBytes) {
+                content = Files.readAllBytes(file.toPath());
+                readAheadSize.addAndGet(content.length);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the failure is reported when the file is read for real
+        }
+        if (content == null) {
+            readAhead.remove(link, PENDING);
+        } else if (!readAhead.replace(link, PENDING, content)) {
+            // it was read for real while this was reading it
+            readAheadSize.addAndGet(-content.length);
+        }
+    }
+
+    /**
+     * @param link the link the file was reached by, which is what it was read ahead by
+     * @param file the file to read
+     */
+    Content read(String link, File file) throws IOException {
+        byte[] readAheadContent = readAheadExecutor == null ? null : readAhead.remove(link);
+        if (readAheadContent != null && readAheadContent != PENDING) {
+            readAheadSize.addAndGet(-readAheadContent.length);
+            return new Content(ByteBuffer.wrap(readAheadContent));
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= mapThreshold) {
+                return new Content(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer buffer = buffers.get();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(Integer.highestOneBit((int) size) << 1);
+                buffers.set(buffer);
+            }
+            buffer.clear();
+            // the file can grow after its size is read, so read up to the end of the buffer
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                if (!buffer.hasRemaining() && channel.position() < channel.size()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                    buffers.set(buffer);
+                }
+            }
+            buffer.flip();
+            return new Content(buffer);
+        }
+    }
+
+    /**
+     * @return the charset of the bytes, from the position of the buffer, which is moved past any byte order mark
+     */
+    static Charset sniffCharset(ByteBuffer bytes) {
+        int start = bytes.position();
+        int length = bytes.remaining();
+        if (length >= 3 && bytes.get(start) == (byte) 0xEF && bytes.get(start + 1) == (byte) 0xBB && bytes.get(start + 2) == (byte) 0xBF) {
+            bytes.position(start + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && bytes.get(start) == (byte) 0xFE && bytes.get(start + 1) == (byte) 0xFF) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && bytes.get(start) == (byte) 0xFF && bytes.get(start + 1) == (byte) 0xFE) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        char[] head = new char[Math.min(length, SNIFF_LENGTH)];
+        for (int i = 0; i < head.length; i++) {
+            head[i] = (char) (bytes.get(start + i) & 0xFF);
+        }
+        Matcher matcher = META_CHARSET.matcher(new String(head));
+        if (matcher.find()) {
+            try {
+                Charset charset = Charset.forName(matcher.group(1));
+                // a page that says it is UTF-16 without a byte order mark was read as ASCII to get this far, so it is not
+                if (!charset.name().startsWith("UTF-16")) {
+                    return charset;
+                }
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                // fall back to the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public void close() {
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+            readAhead.clear();
+        }
+    }
+
+    /**
+     * The bytes of a file, which are only valid until the thread that read them reads another file.
+     */
+    static class Content {
+        private final ByteBuffer bytes;
+
+        Content(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        int length() {
+            return bytes.remaining();
+        }
+
+        /**
+         * @return the same hash as {@code Hashing.murmur3_128().hashBytes(bytes)}, as a string
+         */
+        String hash() {
+            if (bytes.hasArray()) {
+                return HASH.hashBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()).toString();
+            }
+            Hasher hasher = HASH.newHasher();
+            ByteBuffer view = bytes.duplicate();
+            byte[] chunk = new byte[Math.min(HASH_CHUNK, view.remaining())];
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                hasher.putBytes(chunk, 0, length);
+            }
+            return hasher.hash().toString();
+        }
+
+        /**
+         * @return the text of the file, decoded with its sniffed charset
+         */
+        String text() {
+            ByteBuffer view = bytes.duplicate();
+            Charset charset = sniffCharset(view);
+            return charset.decode(view).toString();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.gradle.api.logging.LogLevel;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the link checker's messages to the Gradle log and to the log file.
+ * <p>
+ * The file has its own level, so it can be more or less verbose than the console. Messages that neither wants are
+ * dropped before they are formatted, and a message that is wanted is only formatted once. Callers that would have to
+ * do extra work to build a message's arguments should check {@link #isEnabled(LogLevel)} first.
+ * <p>
+ * When opened on a file, lines are handed to a background thread that writes them through a large buffer, so the
+ * crawl never waits on the disk; the buffer is flushed whenever the thread catches up, so the file can be followed
+ * while the check runs. Messages use the same {@code {}} placeholders as SLF4J.
+ */
+public class ReportWriter implements Closeable {
+
+    private static final Logger log = Logging.getLogger(LinkCheckerPluginTask.class);
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Tells the background thread that there are no more lines.
+     */
+    private static final String END = new String("END");
+
+    private final LogLevel fileLevel;
+    private final PrintWriter printWriter;
+    private final BlockingQueue<String> lines;
+    private final Thread writerThread;
+    private volatile IOException writeFailure;
+
+    private ReportWriter(LogLevel fileLevel, PrintWriter printWriter, Writer asyncWriter) {
+        this.fileLevel = fileLevel;
+        this.printWriter = printWriter;
+        if (asyncWriter == null) {
+            this.lines = null;
+            this.writerThread = null;
+        } else {
+            this.lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            this.writerThread = new Thread(() -> drain(asyncWriter), "linkchecker-report");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        }
+    }
+
+    /**
+     * Opens a report that writes to the file in the background.
+     *
+     * @param file      the file to write to
+     * @param fileLevel the lowest level written to the file, or {@code null} to follow the Gradle log level
+     */
+    public static ReportWriter open(File file, LogLevel fileLevel) throws IOException {
+        return new ReportWriter(fileLevel, null, Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Wraps a writer for callers that manage their own log file.
+     * Lines are written to it directly, at the Gradle log level.
+     *
+     * @param printWriter the writer to write to, or {@code null} to only log to Gradle
+     */
+    public static ReportWriter wrap(PrintWriter printWriter) {
+        return new ReportWriter(null, printWriter, null);
+    }
+
+    /**
+     * @return true if a message at this level would be written anywhere
+     */
+    public boolean isEnabled(LogLevel level) {
+        return log.isEnabled(level) || isFileEnabled(level);
+    }
+
+    private boolean isFileEnabled(LogLevel level) {
+        if (printWriter == null && lines == null) {
+            return false;
+        }
+        return fileLevel == null ? log.isEnabled(level) : level.compareTo(fileLevel) >= 0;
+    }
+
+    public void log(LogLevel level, String msg) {
+        if (log.isEnabled(level)) {
+            log.log(level, msg);
+        }
+        if (isFileEnabled(level)) {
+            writeLine(msg);
+        }
+    }
+
+    public void log(LogLevel level, String format, Object arg) {
+        if (isEnabled(level)) {
+            write(level, MessageFormatter.format(format, arg));
+        }
+    }
+
+    public void log(LogLevel level, String format, Object arg1, Object arg2) {
+        if (isEnabled(level)) {
+            write(level, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    public void log(LogLevel level, String format, Object... args) {
+        if (isEnabled(level)) {
+            write(level, MessageFormatter.arrayFormat(format, args));
+        }
+    }
+
+    private void write(LogLevel level, FormattingTuple message) {
+        if (log.isEnabled(level)) {
+            if (message.getThrowable() == null) {
+                log.log(level, message.getMessage());
+            } else {
+                log.log(level, message.getMessage(), message.getThrowable());
+            }
+        }
+        if (isFileEnabled(level)) {
+            writeLine(message.getThrowable() == null
+                    ? message.getMessage()
+                    : message.getMessage() + " " + message.getThrowable());
+        }
+    }
+
+    private void writeLine(String line) {
+        if (lines == null) {
+            printWriter.println(line);
+            return;
+        }
+        try {
+            lines.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(Writer writer) {
+        try (BufferedWriter bufferedWriter = new BufferedWriter(writer, BUFFER_SIZE)) {
+            String line = lines.take();
+            while (line != END) {
+                bufferedWriter.write(line);
+                bufferedWriter.newLine();
+                line = lines.poll();
+                if (line == null) {
+                    // caught up, so let what has been logged so far be seen before waiting for more
+                    bufferedWriter.flush();
+                    line = lines.take();
+                }
+            }
+        } catch (IOException e) {
+            writeFailure = e;
+            // keep taking lines so that nobody blocks on a full queue
+            lines.clear();
+            while (true) {
+                try {
+                    if (lines.take() == END) {
+                        return;
+                    }
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            writeFailure = new InterruptedIOException("Interrupted while writing the report");
+        }
+    }
+
+    /**
+     * Waits for everything to be written, then closes the file.
+     *
+     * @throws IOException if any of the report could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (writerThread != null) {
+            try {
+                lines.put(END);
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the report");
+            }
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+        } else if (printWriter != null) {
+            printWriter.flush();
+        }
+    }
+}
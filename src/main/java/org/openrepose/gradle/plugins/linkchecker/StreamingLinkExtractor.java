@@ -0,0 +1,223 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.jsoup.parser.Parser;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds links by scanning the markup once, tag by tag, without building a DOM.
+ * <p>
+ * Only as much of HTML tokenization is done as is needed to find the same start tags that Jsoup would: comments,
+ * doctypes, end tags, and the text content of raw text elements (e.g. {@code script}) are skipped over. Tag and
+ * attribute names are matched case-insensitively, and when an attribute is repeated the first value wins, as the HTML
+ * specification requires. Character references in attribute values are decoded with Jsoup's own decoder. Anchors are
+ * found in the same scan.
+ */
+class StreamingLinkExtractor implements LinkExtractor {
+
+    /**
+     * Elements whose content is text rather than markup.
+     */
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title", "iframe", "noembed", "noframes", "xmp"};
+
+    private final LinkRules rules;
+
+    StreamingLinkExtractor(LinkRules rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public void extract(String html, LinkHandler handler) {
+        int length = html.length();
+        int pos = html.indexOf('<');
+        while (pos >= 0 && pos < length - 1) {
+            char next = html.charAt(pos + 1);
+            if (html.startsWith("<!--", pos)) {
+                pos = skipPast(html, "-->", pos + 4);
+            } else if (next == '!' || next == '?' || next == '/') {
+                pos = skipPast(html, ">", pos + 2);
+            } else if (isLetter(next)) {
+                pos = startTag(html, pos + 1, handler);
+            } else {
+                pos++;
+            }
+            if (pos < 0) {
+                break;
+            }
+            pos = html.indexOf('<', pos);
+        }
+    }
+
+    /**
+     * Reads a start tag, reporting it if it holds a link.
+     *
+     * @param pos the position of the first character of the tag name
+     * @return the position just after the tag (and its content, if it is a raw text element), or -1 at the end
+     */
+    private int startTag(String html, int pos, LinkHandler handler) {
+        int length = html.length();
+        int nameEnd = pos;
+        while (nameEnd < length && !isNameEnd(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        String tagName = html.substring(pos, nameEnd).toLowerCase(Locale.ENGLISH);
+        List<String> wanted = rules.attributesOf(tagName);
+        boolean anchorByName = "a".equals(tagName);
+        String[] values = wanted == null ? null : new String[wanted.size()];
+        String id = null;
+        String name = null;
+        String rel = null;
+
+        pos = nameEnd;
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '>') {
+                break;
+            } else if (isWhitespace(c) || c == '/') {
+                pos++;
+                continue;
+            }
+            int attributeStart = pos;
+            while (pos < length && !isNameEnd(html.charAt(pos)) && html.charAt(pos) != '=') {
+                pos++;
+            }
+            // a name can start with '=' in which case it is part of the name
+            if (pos == attributeStart) {
+                pos++;
+            }
+            int link = linkAttribute(html, attributeStart, pos, wanted, values);
+            boolean isLink = link >= 0;
+            boolean isId = id == null && isAttribute(html, attributeStart, pos, "id");
+            boolean isName = anchorByName && name == null && isAttribute(html, attributeStart, pos, "name");
+            boolean isRel = wanted != null && rel == null && isAttribute(html, attributeStart, pos, "rel");
+            pos = skipWhitespace(html, pos);
+            String attributeValue = "";
+            if (pos < length && html.charAt(pos) == '=') {
+                pos = skipWhitespace(html, pos + 1);
+                if (pos >= length) {
+                    break;
+                }
+                char quote = html.charAt(pos);
+                int valueStart;
+                int valueEnd;
+                if (quote == '"' || quote == '\'') {
+                    valueStart = pos + 1;
+                    valueEnd = html.indexOf(quote, valueStart);
+                    if (valueEnd < 0) {
+                        return -1;
+                    }
+                    pos = valueEnd + 1;
+                } else {
+                    valueStart = pos;
+                    while (pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+                        pos++;
+                    }
+                    valueEnd = pos;
+                }
+                if (isLink || isId || isName || isRel) {
+                    attributeValue = decode(html.substring(valueStart, valueEnd));
+                }
+            }
+            if (isLink) {
+                values[link] = attributeValue;
+            }
+            if (isId) {
+                id = attributeValue;
+            }
+            if (isName) {
+                name = attributeValue;
+            }
+            if (isRel) {
+                rel = attributeValue;
+            }
+        }
+        if (pos >= length) {
+            return -1;
+        }
+
+        if (id != null && !id.isEmpty()) {
+            handler.anchor(id);
+        }
+        if (name != null && !name.isEmpty()) {
+            handler.anchor(name);
+        }
+        if (wanted != null && !LinkRules.isResourceHint(tagName, rel)) {
+            LinkRules.report(handler, tagName, wanted, values);
+        }
+        for (String rawTextElement : RAW_TEXT_ELEMENTS) {
+            if (rawTextElement.equals(tagName)) {
+                return skipPastEndTag(html, tagName, pos + 1);
+            }
+        }
+        return pos + 1;
+    }
+
+    /**
+     * @return the index of the link attribute whose name is between start and end, if it has not been seen yet in this
+     * tag, otherwise -1
+     */
+    private static int linkAttribute(String html, int start, int end, List<String> wanted, String[] values) {
+        if (wanted != null) {
+            for (int i = 0; i < values.length; i++) {
+                if (isAttribute(html, start, end, wanted.get(i))) {
+                    return values[i] == null ? i : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the attribute name between start and end is the given (lower case) name, ignoring case
+     */
+    private static boolean isAttribute(String html, int start, int end, String attribute) {
+        return end - start == attribute.length() && html.regionMatches(true, start, attribute, 0, attribute.length());
+    }
+
+    private static String decode(String value) {
+        return value.indexOf('&') < 0 ? value : Parser.unescapeEntities(value, true);
+    }
+
+    /**
+     * @return the position just after the end tag for the element, or -1 if there isn't one
+     */
+    private static int skipPastEndTag(String html, String tagName, int pos) {
+        int length = html.length();
+        for (int end = html.indexOf("</", pos); end >= 0; end = html.indexOf("</", end + 2)) {
+            int nameEnd = end + 2 + tagName.length();
+            if (html.regionMatches(true, end + 2, tagName, 0, tagName.length())
+                    && (nameEnd >= length || isNameEnd(html.charAt(nameEnd)))) {
+                return skipPast(html, ">", nameEnd);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position just after the next occurrence of the terminator, or -1 if there isn't one
+     */
+    private static int skipPast(String html, String terminator, int pos) {
+        int end = html.indexOf(terminator, pos);
+        return end < 0 ? -1 : end + terminator.length();
+    }
+
+    private static int skipWhitespace(String html, int pos) {
+        while (pos < html.length() && isWhitespace(html.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameEnd(char c) {
+        return isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,113 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+/**
+ * The outcome of checking a single URL.
+ */
+class UrlCheckResult {
+
+    enum Outcome {
+        /**
+         * The URL responded with {@code 200 OK}.
+         */
+        OK,
+        /**
+         * The URL responded with a redirect that was not followed.
+         */
+        REDIRECT,
+        /**
+         * The URL responded with anything other than {@code 200 OK} or a redirect.
+         */
+        BAD_RESPONSE,
+        /**
+         * The host could not be resolved, the connection was refused, or it timed out.
+         */
+        CANNOT_CONNECT,
+        /**
+         * Any other problem communicating with the URL.
+         */
+        PROBLEM,
+        /**
+         * The link could not be parsed as a URL.
+         */
+        MALFORMED,
+        /**
+         * The URL is not an http(s) URL, so it was not checked.
+         */
+        UNSUPPORTED_PROTOCOL,
+        /**
+         * The URL points to {@code localhost}, so it was not checked.
+         */
+        LOCALHOST,
+        /**
+         * The URL points to a host that is configured to be ignored, so it was not checked.
+         */
+        IGNORED_HOST,
+        /**
+         * The time budget for checking URLs ran out before this URL could be checked.
+         */
+        OVER_BUDGET,
+        /**
+         * URL checks are being replayed, and this URL was not in the recording, so it was not checked.
+         */
+        NOT_RECORDED
+    }
+
+    final Outcome outcome;
+    final int responseCode;
+    final Exception exception;
+    /**
+     * Where the URL ended up if the request was redirected, otherwise {@code null}.
+     */
+    final String redirectTarget;
+    /**
+     * Whether this result was remembered from an earlier check, or replayed from a recording, rather than coming from
+     * the network.
+     */
+    final boolean fromCache;
+
+    UrlCheckResult(Outcome outcome) {
+        this(outcome, -1, null);
+    }
+
+    UrlCheckResult(Outcome outcome, int responseCode, Exception exception) {
+        this(outcome, responseCode, exception, null, false);
+    }
+
+    UrlCheckResult(Outcome outcome, int responseCode, Exception exception, String redirectTarget, boolean fromCache) {
+        this.outcome = outcome;
+        this.responseCode = responseCode;
+        this.exception = exception;
+        this.redirectTarget = redirectTarget;
+        this.fromCache = fromCache;
+    }
+
+    /**
+     * @return this result, as reached by following redirects to the target
+     */
+    UrlCheckResult redirectedTo(String target) {
+        return new UrlCheckResult(outcome, responseCode, exception, target, fromCache);
+    }
+
+    /**
+     * @return true if the URL was reached and responded successfully
+     */
+    boolean isGood() {
+        return outcome == Outcome.OK || outcome == Outcome.REDIRECT;
+    }
+
+    /**
+     * @return true if this result came from actually talking to the URL, and so is worth remembering
+     */
+    boolean isFromNetwork() {
+        switch (outcome) {
+            case OK:
+            case REDIRECT:
+            case BAD_RESPONSE:
+            case CANNOT_CONNECT:
+            case PROBLEM:
+                return !fromCache;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.openrepose.gradle.plugins.linkchecker.UrlCheckResult.Outcome.*;
+
+/**
+ * Checks URLs in the background while the crawl carries on.
+ * <p>
+ * URLs are normalized first (the fragment is dropped, and the host is lower cased and the default port left out), so
+ * links that differ only in those ways share a single check. Redirects are followed one hop at a time, up to
+ * {@link LinkCheckerSettings#maxRedirects}, and the response for each hop is remembered for the rest of the run, so a
+ * hop that many redirect chains pass through is only requested once.
+ * <p>
+ * Checks are spread over a fixed number of threads, with a cap on how many may be talking to any one host at a time.
+ * Connections are left open once a response has been read so that the JVM can reuse them for the next request to the
+ * same host. Once the time budget has been spent, any URL that has not been checked yet is reported as
+ * {@link UrlCheckResult.Outcome#OVER_BUDGET} rather than being attempted.
+ * <p>
+ * Results are looked up in, and saved to, the {@link UrlResultCache} if one is configured, so URLs that were checked
+ * recently by an earlier build are not checked again.
+ * <p>
+ * The results can also be recorded to, or replayed from, a {@link UrlRecording}. When replaying, nothing is requested
+ * over the network at all, and URLs that are missing from the recording are reported as
+ * {@link UrlCheckResult.Outcome#NOT_RECORDED}.
+ */
+class UrlChecker implements Closeable {
+
+    private static final Logger log = Logging.getLogger(UrlChecker.class);
+
+    private final int httpURLConnectionTimeout;
+    private final int maxRedirects;
+    private final HostMatcher ignoredHosts;
+    private final int maxConcurrentChecksPerHost;
+    private final long deadline;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, HostLane> hostLanes = new ConcurrentHashMap<>();
+    /**
+     * The checks of each normalized URL, including any redirects that were followed.
+     */
+    private final ConcurrentMap<String, CompletableFuture<UrlCheckResult>> checks = new ConcurrentHashMap<>();
+    /**
+     * The response of each normalized URL, without following any redirects.
+     */
+    private final ConcurrentMap<String, CompletableFuture<UrlCheckResult>> responses = new ConcurrentHashMap<>();
+    private final UrlResultCache cache;
+    private final UrlRecording recording;
+    private final boolean replaying;
+    private final CrawlMetrics metrics;
+    private volatile boolean discardRecording;
+
+    UrlChecker(LinkCheckerSettings settings) {
+        this(settings, new CrawlMetrics());
+    }
+
+    UrlChecker(LinkCheckerSettings settings, CrawlMetrics metrics) {
+        this.metrics = metrics;
+        this.httpURLConnectionTimeout = settings.httpURLConnectionTimeout;
+        this.maxRedirects = settings.maxRedirects;
+        this.ignoredHosts = new HostMatcher(settings.ignoreHostRegexs);
+        this.maxConcurrentChecksPerHost = Math.max(1, settings.maxConcurrentUrlChecksPerHost);
+        this.deadline = settings.urlCheckTimeBudget > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.urlCheckTimeBudget)
+                : Long.MAX_VALUE;
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, settings.maxConcurrentUrlChecks),
+                new ThreadFactoryBuilder().setNameFormat("linkchecker-url-%d").setDaemon(true).build()
+        );
+        this.recording = UrlRecording.load(settings);
+        this.replaying = UrlRecording.REPLAY.equals(settings.urlCheckMode);
+        this.cache = replaying ? null : UrlResultCache.load(settings);
+    }
+
+    /**
+     * Schedules the URL to be checked.
+     * <p>
+     * Links that can be judged without going to the network complete immediately, and links that normalize to a URL
+     * that has already been submitted share its check.
+     *
+     * @param link the URL to check
+     * @return the eventual result of the check
+     */
+    CompletableFuture<UrlCheckResult> submit(String link) {
+        URL url;
+        try {
+            url = normalize(new URL(link));
+        } catch (MalformedURLException exception) {
+            return CompletableFuture.completedFuture(new UrlCheckResult(MALFORMED, -1, exception));
+        }
+        UrlCheckResult judged = judge(url);
+        if (judged != null) {
+            return CompletableFuture.completedFuture(judged);
+        }
+        String key = url.toString();
+        CompletableFuture<UrlCheckResult> check = checks.get(key);
+        if (check == null) {
+            check = checks.computeIfAbsent(key, ignored -> start(url));
+        }
+        return check;
+    }
+
+    /**
+     * @return the result for a URL that should not be requested, or {@code null} if it should be
+     */
+    private UrlCheckResult judge(URL url) {
+        // note that this also matches https
+        if (!url.getProtocol().startsWith("http")) {
+            return new UrlCheckResult(UNSUPPORTED_PROTOCOL);
+        }
+        // note that this is ignoring 127.0.0.1 altogether, gotta draw a line somewhere
+        String host = url.getHost();
+        if (host.equals("localhost")) {
+            return new UrlCheckResult(LOCALHOST);
+        }
+        if (ignoredHosts.matches(host)) {
+            return new UrlCheckResult(IGNORED_HOST);
+        }
+        return null;
+    }
+
+    /**
+     * @return the URL without its fragment, with its host lower cased, and without its port if it is the default one
+     */
+    static URL normalize(URL url) throws MalformedURLException {
+        StringBuilder normalized = new StringBuilder(url.getProtocol()).append("://");
+        if (url.getUserInfo() != null) {
+            normalized.append(url.getUserInfo()).append('@');
+        }
+        normalized.append(url.getHost().toLowerCase(Locale.ENGLISH));
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            normalized.append(':').append(url.getPort());
+        }
+        normalized.append(url.getFile().isEmpty() ? "/" : url.getFile());
+        return new URL(normalized.toString());
+    }
+
+    private CompletableFuture<UrlCheckResult> start(URL url) {
+        String key = url.toString();
+        if (replaying) {
+            UrlCheckResult recorded = recording.get(key);
+            return CompletableFuture.completedFuture(recorded == null ? new UrlCheckResult(NOT_RECORDED) : judgeRedirect(recorded));
+        }
+        if (cache != null) {
+            UrlCheckResult cached = cache.get(key);
+            if (cached != null) {
+                record(key, cached);
+                return CompletableFuture.completedFuture(judgeRedirect(cached));
+            }
+        }
+        return follow(url, maxRedirects).thenApply(result -> {
+            if (cache != null && result.isFromNetwork()) {
+                cache.put(key, result);
+            }
+            record(key, result);
+            return judgeRedirect(result);
+        });
+    }
+
+    /**
+     * A redirect to a URL that should not be requested is kept as the redirect itself, so that it can be cached and
+     * recorded, and is only judged by its target when it is used, with the settings of the run using it.
+     *
+     * @return the result for the target of the redirect, e.g. a redirect to localhost is as much of a problem as a link
+     * to it, or the result as it is if it is not such a redirect
+     */
+    private UrlCheckResult judgeRedirect(UrlCheckResult result) {
+        if (result.outcome != REDIRECT || result.redirectTarget == null || maxRedirects <= 0) {
+            return result;
+        }
+        UrlCheckResult judged;
+        try {
+            judged = judge(new URL(result.redirectTarget));
+        } catch (MalformedURLException exception) {
+            return result;
+        }
+        return judged == null ? result : judged.redirectedTo(result.redirectTarget);
+    }
+
+    private void record(String key, UrlCheckResult result) {
+        if (recording == null) {
+            return;
+        }
+        // a cached result was from the network when it was cached
+        if (result.isFromNetwork() || result.fromCache) {
+            recording.put(key, result);
+        } else if (result.outcome == OVER_BUDGET) {
+            recording.keepPrevious(key);
+        }
+    }
+
+    /**
+     * Requests the URL, and then wherever it redirects to, until it stops redirecting or the hops run out.
+     */
+    private CompletableFuture<UrlCheckResult> follow(URL url, int hopsLeft) {
+        return response(url).thenCompose(result -> {
+            if (result.outcome != REDIRECT || result.redirectTarget == null || maxRedirects <= 0) {
+                return CompletableFuture.completedFuture(result);
+            }
+            URL target;
+            try {
+                target = normalize(new URL(url, result.redirectTarget));
+            } catch (MalformedURLException exception) {
+                return CompletableFuture.completedFuture(new UrlCheckResult(PROBLEM, result.responseCode, exception, result.redirectTarget, false));
+            }
+            if (hopsLeft <= 0) {
+                ProtocolException tooMany = new ProtocolException("Server redirected too many times (" + maxRedirects + ")");
+                return CompletableFuture.completedFuture(new UrlCheckResult(PROBLEM, result.responseCode, tooMany, target.toString(), false));
+            }
+            if (judge(target) != null) {
+                // not followed, see judgeRedirect
+                return CompletableFuture.completedFuture(new UrlCheckResult(REDIRECT, result.responseCode, null, target.toString(), false));
+            }
+            return follow(target, hopsLeft - 1).thenApply(last -> last.redirectTarget == null ? last.redirectedTo(target.toString()) : last);
+        });
+    }
+
+    /**
+     * @return the response of the URL itself, requesting it only if it has not been requested by this run before
+     */
+    private CompletableFuture<UrlCheckResult> response(URL url) {
+        String key = url.toString();
+        CompletableFuture<UrlCheckResult> response = responses.get(key);
+        if (response == null) {
+            response = responses.computeIfAbsent(key, ignored -> hostLanes.computeIfAbsent(url.getHost(), host -> new HostLane()).submit(url));
+        }
+        return response;
+    }
+
+    private UrlCheckResult check(URL url) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            return new UrlCheckResult(OVER_BUDGET);
+        }
+        int timeout = httpURLConnectionTimeout;
+        boolean clipped = deadline != Long.MAX_VALUE && (timeout <= 0 || timeout > remaining);
+        if (clipped) {
+            timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("HEAD");
+            connection.setInstanceFollowRedirects(false);
+            if (timeout >= 0) {
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+            }
+            connection.connect();
+            int responseCode = connection.getResponseCode();
+            String location = connection.getHeaderField("Location");
+            release(connection);
+            if (300 <= responseCode && responseCode < 400) {
+                return new UrlCheckResult(REDIRECT, responseCode, null, location, false);
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                return new UrlCheckResult(BAD_RESPONSE, responseCode, null);
+            }
+            return new UrlCheckResult(OK, responseCode, null);
+        } catch (InterruptedIOException | ConnectException | UnknownHostException exception) {
+            if (clipped && exception instanceof InterruptedIOException) {
+                // it timed out because the budget ran out, not because the URL took too long
+                return new UrlCheckResult(OVER_BUDGET);
+            }
+            return new UrlCheckResult(CANNOT_CONNECT, -1, exception);
+        } catch (IOException exception) {
+            return new UrlCheckResult(PROBLEM, -1, exception);
+        } finally {
+            metrics.urlChecked(url.getHost(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Closes the response stream, rather than disconnecting, so the connection is returned to the keep-alive cache.
+     */
+    private static void release(HttpURLConnection connection) {
+        try (InputStream ignored = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getInputStream()
+                : connection.getErrorStream()) {
+            // nothing to read from a HEAD response
+        } catch (IOException ignored) {
+            // the response has already been read; the connection just won't be reused
+        }
+    }
+
+    /**
+     * Leaves the recording as it was when the checker is closed, rather than replacing it with one that is missing the
+     * URLs that were never checked, e.g. because the run stopped early.
+     */
+    void discardRecording() {
+        discardRecording = true;
+    }
+
+    /**
+     * Waits for the checks in progress, abandons any that have not started, and then saves the cache and recording.
+     *
+     * @throws UncheckedIOException if URL checks were being recorded, and the recording could not be saved
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            // a check can spend up to its timeout both connecting and reading
+            long timeout = httpURLConnectionTimeout > 0 ? 2L * httpURLConnectionTimeout : TimeUnit.MINUTES.toMillis(1);
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                log.warn("Gave up waiting for URL checks to finish");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                log.warn("Failed to save the URL cache", e);
+            }
+        }
+        if (recording != null && !replaying) {
+            if (discardRecording) {
+                log.warn("The recording of URL checks was left as it was, since not every URL was checked");
+                return;
+            }
+            try {
+                recording.save();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to save the recording of URL checks", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the checks for a single host, never more than {@link #maxConcurrentChecksPerHost} at a time.
+     * <p>
+     * Checks beyond the limit wait here rather than on a thread, so a slow host can't tie up the whole pool.
+     */
+    private class HostLane {
+        private final Queue<Map.Entry<URL, CompletableFuture<UrlCheckResult>>> waiting = new ArrayDeque<>();
+        private int active;
+
+        CompletableFuture<UrlCheckResult> submit(URL url) {
+            CompletableFuture<UrlCheckResult> result = new CompletableFuture<>();
+            synchronized (this) {
+                if (active >= maxConcurrentChecksPerHost) {
+                    waiting.add(new AbstractMap.SimpleImmutableEntry<>(url, result));
+                    return result;
+                }
+                active++;
+            }
+            execute(url, result);
+            return result;
+        }
+
+        private void execute(URL url, CompletableFuture<UrlCheckResult> result) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        result.complete(check(url));
+                    } catch (RuntimeException exception) {
+                        result.completeExceptionally(exception);
+                    } finally {
+                        next();
+                    }
+                });
+            } catch (RejectedExecutionException closed) {
+                // nothing more is checked once the checker is closed
+                result.cancel(false);
+                abandon();
+            }
+        }
+
+        private void next() {
+            Map.Entry<URL, CompletableFuture<UrlCheckResult>> check;
+            synchronized (this) {
+                check = waiting.poll();
+                if (check == null) {
+                    active--;
+                    return;
+                }
+            }
+            execute(check.getKey(), check.getValue());
+        }
+
+        private void abandon() {
+            List<CompletableFuture<UrlCheckResult>> abandoned = new ArrayList<>();
+            synchronized (this) {
+                for (Map.Entry<URL, CompletableFuture<UrlCheckResult>> check : waiting) {
+                    abandoned.add(check.getValue());
+                }
+                waiting.clear();
+                active = 0;
+            }
+            for (CompletableFuture<UrlCheckResult> result : abandoned) {
+                result.cancel(false);
+            }
+        }
+    }
+}
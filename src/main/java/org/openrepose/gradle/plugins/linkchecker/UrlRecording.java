@@ -0,0 +1,168 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A recording of the results of URL checks, so that a build without network access can replay them.
+ * <p>
+ * Unlike the {@link UrlResultCache}, entries never expire, and a recording only holds the URLs checked by the run
+ * that recorded it, apart from any that the run ran out of time for, which keep what was recorded for them before. It
+ * is stored as one tab separated line per URL, sorted by URL, so that it can be kept under
+ * version control and its changes reviewed.
+ */
+class UrlRecording {
+
+    /**
+     * URLs are checked over the network.
+     */
+    static final String LIVE = "live";
+
+    /**
+     * URLs are checked over the network, and the results are recorded.
+     */
+    static final String RECORD = "record";
+
+    /**
+     * URLs are never checked over the network; the recorded results are used instead.
+     */
+    static final String REPLAY = "replay";
+
+    private static final Logger log = Logging.getLogger(UrlRecording.class);
+
+    private static final String NONE = "-";
+
+    private final File file;
+    private final ConcurrentMap<String, UrlCheckResult> results = new ConcurrentSkipListMap<>();
+    /**
+     * What the file held before this recording was started, if it is recording.
+     */
+    private final Map<String, UrlCheckResult> previous = new ConcurrentSkipListMap<>();
+
+    UrlRecording(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the recording to replay, or starts a new one to record, as configured by the settings.
+     *
+     * @return the recording, or {@code null} if URLs are checked live
+     * @throws IllegalArgumentException if the mode is unknown, or there is no file for the recording
+     */
+    static UrlRecording load(LinkCheckerSettings settings) {
+        String mode = settings.urlCheckMode;
+        if (mode == null || LIVE.equals(mode)) {
+            return null;
+        }
+        if (!RECORD.equals(mode) && !REPLAY.equals(mode)) {
+            throw new IllegalArgumentException("Unknown URL check mode '" + mode + "'; expected '" + LIVE + "', '" + RECORD + "', or '" + REPLAY + "'");
+        }
+        if (settings.urlRecordingFile == null) {
+            throw new IllegalArgumentException("A 'urlRecordingFile' is needed to " + mode + " URL checks");
+        }
+        UrlRecording recording = new UrlRecording(settings.urlRecordingFile);
+        if (REPLAY.equals(mode)) {
+            if (recording.file.isFile()) {
+                recording.load(recording.results);
+            } else {
+                log.warn("There is no recording of URL checks to replay: {}", recording.file);
+            }
+        } else if (recording.file.isFile()) {
+            recording.load(recording.previous);
+        }
+        return recording;
+    }
+
+    private void load(Map<String, UrlCheckResult> results) {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    results.put(fields[0], new UrlCheckResult(
+                            UrlCheckResult.Outcome.valueOf(fields[1]),
+                            Integer.parseInt(fields[2]),
+                            null,
+                            NONE.equals(fields[3]) ? null : fields[3],
+                            true
+                    ));
+                } catch (IllegalArgumentException ignored) {
+                    // recorded by a different version of this plugin
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable recording of URL checks: {}", file, e);
+            results.clear();
+        }
+    }
+
+    /**
+     * @return the recorded result for the normalized URL, or {@code null} if it was not recorded
+     */
+    UrlCheckResult get(String url) {
+        return results.get(url);
+    }
+
+    void put(String url, UrlCheckResult result) {
+        if (url.indexOf('\t') < 0 && url.indexOf('\n') < 0 && url.indexOf('\r') < 0) {
+            results.put(url, result);
+        }
+    }
+
+    /**
+     * Keeps what was recorded before for a URL that could not be checked this time, if anything was.
+     */
+    void keepPrevious(String url) {
+        UrlCheckResult result = previous.get(url);
+        if (result != null) {
+            results.put(url, result);
+        }
+    }
+
+    int size() {
+        return results.size();
+    }
+
+    /**
+     * Replaces the file with what has been recorded.
+     */
+    void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, UrlCheckResult> entry : results.entrySet()) {
+                    UrlCheckResult result = entry.getValue();
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(result.outcome.name());
+                    writer.write('\t');
+                    writer.write(Integer.toString(result.responseCode));
+                    writer.write('\t');
+                    writer.write(result.redirectTarget == null ? NONE : result.redirectTarget);
+                    // not newLine(), so that the file is the same on every platform
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.openrepose.gradle.plugins.linkchecker;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the results of URL checks between builds.
+ * <p>
+ * Each entry holds the outcome, response code, redirect target, and the time the URL was checked. Entries expire after
+ * {@link LinkCheckerSettings#urlCacheSuccessTtl} if the URL was good, or {@link LinkCheckerSettings#urlCacheFailureTtl}
+ * if it was not. When saved, only the {@link LinkCheckerSettings#urlCacheMaxEntries} most recently checked entries
+ * are kept.
+ * <p>
+ * The cache is stored as one tab separated line per URL and replaced atomically, so a build that is killed part way
+ * through will not leave a corrupt cache behind. When it is saved, it is merged with whatever was saved to the same file
+ * since it was loaded, e.g. by another project of the same build, keeping the most recent result for each URL.
+ */
+class UrlResultCache {
+
+    private static final Logger log = Logging.getLogger(UrlResultCache.class);
+
+    private static final String NONE = "-";
+
+    /**
+     * One lock per file, so that caches in the same build that share a file take turns to merge into it.
+     */
+    private static final ConcurrentMap<String, Object> SAVE_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final long successTtl;
+    private final long failureTtl;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    UrlResultCache(File file, long successTtl, long failureTtl, int maxEntries) {
+        this.file = file;
+        this.successTtl = successTtl;
+        this.failureTtl = failureTtl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Loads the cache configured by the settings.
+     *
+     * @return the cache, or {@code null} if caching is not configured
+     */
+    static UrlResultCache load(LinkCheckerSettings settings) {
+        if (settings.urlCacheFile == null || settings.urlCacheMaxEntries <= 0) {
+            return null;
+        }
+        UrlResultCache cache = new UrlResultCache(settings.urlCacheFile, settings.urlCacheSuccessTtl, settings.urlCacheFailureTtl, settings.urlCacheMaxEntries);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Reads the unexpired entries from the file, keeping whichever of each URL's entries was checked most recently.
+     */
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(
+                            Long.parseLong(fields[0]),
+                            new UrlCheckResult(
+                                    UrlCheckResult.Outcome.valueOf(fields[1]),
+                                    Integer.parseInt(fields[2]),
+                                    null,
+                                    NONE.equals(fields[3]) ? null : fields[3],
+                                    true
+                            )
+                    );
+                    if (!isExpired(entry, now)) {
+                        entries.merge(fields[4], entry, (mine, saved) -> saved.checkedAt > mine.checkedAt ? saved : mine);
+                    }
+                } catch (IllegalArgumentException ignored) {
+                    // written by a different version of this plugin; just check the URL again
+                }
+            }
+        } catch (IOException e) {
+            // whatever was read is still good
+            log.warn("Ignoring unreadable URL cache: {}", file, e);
+        }
+    }
+
+    /**
+     * @return the remembered result for the URL, or {@code null} if there isn't one or it has expired
+     */
+    UrlCheckResult get(String url) {
+        Entry entry = entries.get(url);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.result;
+    }
+
+    void put(String url, UrlCheckResult result) {
+        put(url, result, System.currentTimeMillis());
+    }
+
+    void put(String url, UrlCheckResult result, long checkedAt) {
+        entries.put(url, new Entry(checkedAt, result));
+    }
+
+    /**
+     * Merges in what has been saved to the file since it was loaded, then writes the unexpired entries back to it,
+     * keeping only the most recently checked ones if there are too many.
+     */
+    void save() throws IOException {
+        synchronized (SAVE_LOCKS.computeIfAbsent(file.getAbsolutePath(), key -> new Object())) {
+            load();
+            write();
+        }
+    }
+
+    private void write() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Entry>> toSave = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!isExpired(entry.getValue(), now)) {
+                toSave.add(entry);
+            }
+        }
+        if (toSave.size() > maxEntries) {
+            toSave.sort(Comparator.comparingLong((Map.Entry<String, Entry> entry) -> entry.getValue().checkedAt).reversed());
+            toSave = toSave.subList(0, maxEntries);
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : toSave) {
+                    UrlCheckResult result = entry.getValue().result;
+                    writer.write(Long.toString(entry.getValue().checkedAt));
+                    writer.write('\t');
+                    writer.write(result.outcome.name());
+                    writer.write('\t');
+                    writer.write(Integer.toString(result.responseCode));
+                    writer.write('\t');
+                    writer.write(result.redirectTarget == null ? NONE : result.redirectTarget);
+                    writer.write('\t');
+                    writer.write(entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        long ttl = entry.result.isGood() ? successTtl : failureTtl;
+        return now - entry.checkedAt >= ttl;
+    }
+
+    private static class Entry {
+        final long checkedAt;
+        final UrlCheckResult result;
+
+        Entry(long checkedAt, UrlCheckResult result) {
+            this.checkedAt = checkedAt;
+            this.result = result;
+        }
+    }
+}
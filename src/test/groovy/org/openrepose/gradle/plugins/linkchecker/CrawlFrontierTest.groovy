@@ -0,0 +1,86 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+
+class CrawlFrontierTest {
+    @Test
+    public void linksAreOnlyScheduledOnce() {
+        def frontier = new CrawlFrontier()
+
+        assertTrue(frontier.offer('/a.html'))
+        assertTrue(frontier.offer('/b.html'))
+        assertFalse(frontier.offer('/a.html'))
+
+        assertEquals("size", 2, frontier.size())
+    }
+
+    @Test
+    public void linksArePolledInDiscoveryOrder() {
+        def frontier = new CrawlFrontier()
+        frontier.offer('/a.html')
+        frontier.offer('/b.html')
+
+        assertEquals('/a.html', frontier.poll())
+        frontier.offer('/a.html')
+        frontier.offer('/c.html')
+        assertEquals('/b.html', frontier.poll())
+        assertEquals('/c.html', frontier.poll())
+        assertNull(frontier.poll())
+        assertTrue(frontier.isEmpty())
+        assertEquals("size", 3, frontier.size())
+    }
+
+    @Test
+    public void claimedLinksAreOnlyScheduledByOneFrontier() {
+        Set<String> claimed = java.util.concurrent.ConcurrentHashMap.newKeySet()
+        def first = new CrawlFrontier(claimed)
+        def second = new CrawlFrontier(claimed)
+
+        assertTrue(first.offer('/a.html'))
+        assertFalse(second.offer('/a.html'))
+        assertTrue(second.offer('/b.html'))
+        assertFalse(first.offer('/b.html'))
+
+        assertEquals("first size", 1, first.size())
+        assertEquals("second size", 1, second.size())
+    }
+
+    @Test
+    public void peekingLeavesLinksScheduled() {
+        def frontier = new CrawlFrontier()
+        frontier.offer('/a.html')
+        frontier.offer('/b.html')
+        frontier.offer('/c.html')
+
+        assertEquals(['/a.html', '/b.html'], frontier.peek(2))
+        assertEquals(['/a.html', '/b.html', '/c.html'], frontier.poll(5))
+        assertEquals([], frontier.peek(2))
+    }
+
+    @Test
+    public void linksArePolledInPriorityOrder() {
+        def frontier = CrawlFrontier.forOrder(CrawlFrontier.PRIORITY_ORDER, null, { String link ->
+            link.startsWith('http') ? CrawlFrontier.URL : link.startsWith('/old') ? CrawlFrontier.UNCHANGED_FILE : CrawlFrontier.CHANGED_FILE
+        })
+        ['http://example.com/', '/old/a.html', '/new/a.html', 'http://example.org/', '/old/b.html', '/new/b.html'].each { frontier.offer(it) }
+
+        assertEquals(['/new/a.html', '/new/b.html', '/old/a.html'], frontier.peek(3))
+        assertEquals(['/new/a.html', '/new/b.html', '/old/a.html'], frontier.poll(3))
+        assertEquals(3, frontier.remaining())
+        frontier.offer('/new/c.html')
+        assertEquals('/new/c.html', frontier.poll())
+        assertEquals(['/old/b.html', 'http://example.com/', 'http://example.org/'], frontier.poll(10))
+        assertTrue(frontier.isEmpty())
+        assertEquals("size", 7, frontier.size())
+    }
+
+    @Test(expected = IllegalArgumentException)
+    public void unknownOrdersAreRejected() {
+        CrawlFrontier.forOrder('random', null, { 0 })
+    }
+}
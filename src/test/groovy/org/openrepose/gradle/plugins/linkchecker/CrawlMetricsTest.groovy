@@ -0,0 +1,63 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import groovy.json.JsonSlurper
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+class CrawlMetricsTest {
+    @Test
+    public void exampleIsMeasured() {
+        def metrics = new CrawlMetrics()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1, ignoreHostRegexs: [/www\.google\.com/])
+
+        LinkChecker.checkLinks(null, new File('./example/src/main/resources/html'), settings, null, null, metrics)
+
+        File json = new File(File.createTempDir(), 'linkchecker.json')
+        json.parentFile.deleteOnExit()
+        metrics.writeJson(json)
+        def written = new JsonSlurper().parse(json)
+
+        assertEquals("files parsed", 8, written.files.parsed)
+        assertEquals("files missing", 1, written.files.missing)
+        assertTrue("bytes read", written.files.bytesRead > 0)
+        assertEquals("links extracted", 9, written.links.extracted)
+        assertEquals("distinct links", 10, written.links.distinct)
+        assertEquals("dedup hits", 0, written.links.dedupHits)
+        assertEquals("ignored URLs", 1, written.urls.outcomes.IGNORED_HOST)
+        assertEquals("slowest files", 8, written.slowestFiles.size())
+        assertTrue("phases", written.phases.keySet().containsAll(['crawl', 'urlChecks']))
+    }
+
+    @Test
+    public void hostLatenciesAreBucketed() {
+        def metrics = new CrawlMetrics()
+        metrics.urlChecked('example.com', 5_000_000)
+        metrics.urlChecked('example.com', 300_000_000)
+        metrics.urlChecked('example.com', 20_000_000_000)
+
+        def host = metrics.toMap().hosts['example.com']
+        assertEquals(3, host.requests)
+        assertEquals(20000, host.maxMillis)
+        assertEquals(1, host.histogram['<10ms'])
+        assertEquals(1, host.histogram['<500ms'])
+        assertEquals(1, host.histogram['>=10000ms'])
+    }
+
+    @Test
+    public void overlappingPhasesAreTimedOnce() {
+        def metrics = new CrawlMetrics()
+        long start = System.nanoTime()
+        def first = metrics.phase('crawl')
+        def second = metrics.phase('crawl')
+        Thread.sleep(200)
+        first.close()
+        Thread.sleep(50)
+        second.close()
+        long elapsedMillis = (System.nanoTime() - start).intdiv(1_000_000)
+
+        long wallMillis = metrics.toMap().phases.crawl.wallMillis
+        assertTrue("$wallMillis", wallMillis >= 250 && wallMillis <= elapsedMillis)
+    }
+}
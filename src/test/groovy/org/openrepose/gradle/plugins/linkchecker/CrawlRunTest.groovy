@@ -0,0 +1,80 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class CrawlRunTest {
+    static File siteWithTwoManuals() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'a').mkdir()
+        new File(dir, 'b').mkdir()
+        new File(dir, 'a/index.html').text = '''<html><body>
+            <a href="../shared.html">shared</a>
+            <a href="../b/index.html#intro">ok</a>
+            <a href="../b/index.html#nope">bad</a>
+        </body></html>'''
+        new File(dir, 'b/index.html').text = '''<html><body>
+            <h1 id="intro">Intro</h1>
+            <a href="../shared.html">shared</a>
+            <a href="../a/index.html#gone">bad</a>
+        </body></html>'''
+        new File(dir, 'shared.html').text = '''<html><body>
+            <a href="a/index.html">a</a>
+            <a href="b/index.html#nope">bad</a>
+        </body></html>'''
+        dir
+    }
+
+    static List<File> roots(File dir) {
+        [new File(dir, 'a/index.html').canonicalFile, new File(dir, 'b/index.html').canonicalFile]
+    }
+
+    @Test
+    public void overlappingRootsAreOnlyCrawledOnce() {
+        File dir = siteWithTwoManuals()
+        def metrics = new CrawlMetrics()
+        new CrawlRun(null, new LinkCheckerSettings(failOnBadAnchors: true), metrics).withCloseable { run ->
+            roots(dir).each { run.crawl(it) }
+
+            assertEquals(3, run.total(roots(dir)))
+            assertEquals(3L, metrics.toMap().files.parsed)
+            assertEquals(3L, metrics.toMap().links.distinct)
+            String bNope = new File(dir, 'b/index.html').canonicalPath + '#nope'
+            String aGone = new File(dir, 'a/index.html').canonicalPath + '#gone'
+            List<String> badLinks = run.badLinks(roots(dir))
+            assertEquals([aGone, bNope], badLinks)
+            assertEquals([new File(dir, 'a/index.html').canonicalFile, new File(dir, 'shared.html').canonicalFile],
+                    run.sourcesOf(roots(dir), badLinks)[bNope] as List)
+        }
+    }
+
+    @Test
+    public void rootsCanBeCrawledAtTheSameTime() {
+        File dir = siteWithTwoManuals()
+        def metrics = new CrawlMetrics()
+        new CrawlRun(null, new LinkCheckerSettings(parallelism: 1, failOnBadAnchors: true), metrics).withCloseable { run ->
+            String runId = run.register()
+            def threads = roots(dir).collect { root -> Thread.start { new LinkCheckerWork(runId, root).run() } }
+            threads*.join()
+
+            assertEquals(3, run.total(roots(dir)))
+            assertEquals(3L, metrics.toMap().files.parsed)
+            String bNope = new File(dir, 'b/index.html').canonicalPath + '#nope'
+            List<String> badLinks = run.badLinks(roots(dir))
+            assertEquals([new File(dir, 'a/index.html').canonicalPath + '#gone', bNope], badLinks)
+            assertEquals([new File(dir, 'a/index.html').canonicalFile, new File(dir, 'shared.html').canonicalFile],
+                    run.sourcesOf(roots(dir), badLinks)[bNope] as List)
+        }
+    }
+
+    @Test(expected = IllegalStateException)
+    public void workNeedsAnOpenRun() {
+        String runId
+        new CrawlRun(null, new LinkCheckerSettings(), new CrawlMetrics()).withCloseable { run ->
+            runId = run.register()
+        }
+        new LinkCheckerWork(runId, new File('index.html')).run()
+    }
+}
@@ -0,0 +1,32 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class CssLinkScannerTest {
+    static List<String> scan(String css) {
+        def links = []
+        new CssLinkScanner().extract(css) { element, attribute, value -> links << "$attribute=$value".toString() }
+        links
+    }
+
+    @Test
+    public void findsUrlsAndImports() {
+        assertEquals(['@import=base.css', 'url=print.css', 'url=img/bg.png', 'url=fonts/a b.woff', 'url=icons.svg#home', 'url=data:image/png;base64,AAAA'],
+                scan('''@import "base.css";
+                    @IMPORT url('print.css') print;
+                    body { background: URL( img/bg.png ) no-repeat; }
+                    @font-face { src: url("fonts/a b.woff") format("woff"); }
+                    .home { mask: url(icons.svg#home); }
+                    .dot { background-image: url(data:image/png;base64,AAAA); }'''))
+    }
+
+    @Test
+    public void skipsCommentsAndLookalikes() {
+        assertEquals(['url=real.png'],
+                scan('''/* background: url(commented.png); @import "commented.css"; */
+                    .a { --my-url(x): 1; background: url(real.png) }
+                    .b { content: "unterminated'''))
+    }
+}
@@ -0,0 +1,50 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class HostMatcherTest {
+    static final List<String> HOSTS = [
+            'www.google.com', 'google.com', 'mail.google.com', 'a.b.google.com', '.google.com', 'google.com.evil.org',
+            'wwwxgoogle.com', 'notgoogle.com', 'sso.corp.example.net', 'aa.example.org', 'ab.example.org',
+            'docs-7.internal', 'localhost', ''
+    ]
+
+    static void assertSameAsStringMatches(List<String> regexs) {
+        def matcher = new HostMatcher(regexs)
+        HOSTS.each { host ->
+            boolean expected = regexs.any { host.matches(it) }
+            assertEquals("$regexs on '$host'".toString(), expected, matcher.matches(host))
+            // and again, from the remembered verdict
+            assertEquals("$regexs on '$host'".toString(), expected, matcher.matches(host))
+        }
+    }
+
+    @Test
+    public void plainHostNames() {
+        assertSameAsStringMatches([/www\.google\.com/, /localhost/])
+    }
+
+    @Test
+    public void domainWildcards() {
+        assertSameAsStringMatches([/.*\.google\.com/, /.*\.corp\.example\.net/])
+    }
+
+    @Test
+    public void otherSuffixWildcards() {
+        assertSameAsStringMatches([/.*google\.com/])
+        assertSameAsStringMatches([/.*/])
+    }
+
+    @Test
+    public void generalExpressions() {
+        assertSameAsStringMatches([/www.google.com/, /docs-\d+\.internal/, /(?i)MAIL\..*/])
+        assertSameAsStringMatches([/(a)\1\.example\.org/, /.*\.google\.com/])
+    }
+
+    @Test
+    public void noExpressions() {
+        assertSameAsStringMatches([])
+    }
+}
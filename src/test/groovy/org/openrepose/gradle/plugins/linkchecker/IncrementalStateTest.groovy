@@ -0,0 +1,66 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
+
+class IncrementalStateTest {
+    static File tempDir() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        dir
+    }
+
+    @Test
+    public void unchangedFilesAreRemembered() {
+        File dir = tempDir()
+        File page = new File(dir, 'page.html')
+        page.text = '<h1 id="top">Top</h1><a href="other.html#intro">other</a>'
+        File stateFile = new File(dir, 'state.txt')
+
+        def state = IncrementalState.load(stateFile, 'test')
+        state.record(page, 'hash', ['/other.html'], ['mailto:someone@example.com'], ['top'], ['/other.html#intro'])
+        state.save()
+
+        def loaded = IncrementalState.load(stateFile, 'test').unchanged(page)
+        assertNotNull(loaded)
+        assertEquals(['/other.html'], loaded.links)
+        assertEquals(['mailto:someone@example.com'], loaded.ignored)
+        assertEquals(['top'], loaded.anchors)
+        assertEquals(['/other.html#intro'], loaded.fragments)
+    }
+
+    @Test
+    public void touchedFilesAreMatchedByContent() {
+        File dir = tempDir()
+        File page = new File(dir, 'page.html')
+        page.text = '<a href="other.html">other</a>'
+        File stateFile = new File(dir, 'state.txt')
+
+        def state = IncrementalState.load(stateFile, 'test')
+        state.record(page, 'hash', ['/other.html'], [], [], [])
+        state.save()
+        page.lastModified = page.lastModified() - 10000
+
+        def loaded = IncrementalState.load(stateFile, 'test')
+        assertNull(loaded.unchanged(page))
+        assertNull(loaded.sameContent(page, 'other-hash'))
+        assertEquals(['/other.html'], loaded.sameContent(page, 'hash').links)
+    }
+
+    @Test
+    public void stateFromADifferentFingerprintIsIgnored() {
+        File dir = tempDir()
+        File page = new File(dir, 'page.html')
+        page.text = '<a href="other.html">other</a>'
+        File stateFile = new File(dir, 'state.txt')
+
+        def state = IncrementalState.load(stateFile, 'old')
+        state.record(page, 'hash', ['/other.html'], [], [], [])
+        state.save()
+
+        assertNull(IncrementalState.load(stateFile, 'new').unchanged(page))
+    }
+}
@@ -4,6 +4,7 @@ import org.gradle.api.Project
 import org.gradle.testfixtures.ProjectBuilder
 import org.junit.Test
 
+import static org.junit.Assert.assertFalse
 import static org.junit.Assert.assertTrue
 
 class LinkCheckerPluginTaskTest {
@@ -13,4 +14,23 @@ class LinkCheckerPluginTaskTest {
         def task = project.task('linkchecker', type: LinkCheckerPluginTask)
         assertTrue(task instanceof LinkCheckerPluginTask)
     }
+
+    @Test
+    public void only_results_that_do_not_depend_on_the_network_are_cached() {
+        Project project = ProjectBuilder.builder().build()
+        def task = project.task('linkchecker', type: LinkCheckerPluginTask) as LinkCheckerPluginTask
+        def extension = new LinkCheckerPluginExtension(project)
+        task.extension = extension
+        assertTrue(task.isReproducible())
+
+        extension.failOnBadUrls = true
+        assertFalse(task.isReproducible())
+
+        extension.urlCheckMode = 'replay'
+        assertTrue(task.isReproducible())
+
+        extension.failOnBadUrls = false
+        extension.urlCheckMode = 'record'
+        assertFalse(task.isReproducible())
+    }
 }
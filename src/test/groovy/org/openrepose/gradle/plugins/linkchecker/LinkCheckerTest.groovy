@@ -2,11 +2,25 @@ package org.openrepose.gradle.plugins.linkchecker
 
 import com.google.common.collect.HashMultimap
 import com.google.common.collect.Multimap
+import groovy.io.FileType
 import org.junit.Test
 
 import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
 
 class LinkCheckerTest {
+    static File copyOfExample() {
+        File source = new File('./example/src/main/resources')
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        source.eachFileRecurse(FileType.FILES) { file ->
+            File target = new File(dir, source.toPath().relativize(file.toPath()).toString())
+            target.parentFile.mkdirs()
+            target.bytes = file.bytes
+        }
+        dir
+    }
+
     @Test
     public void linkCheckerExampleBasic() {
         def linksToSourceFiles = HashMultimap.create() as Multimap<String, File>
@@ -102,4 +116,290 @@ class LinkCheckerTest {
         assertEquals("linksToSourceFiles", 9, linksToSourceFiles.size())
         assertEquals("badLinks", 2, badLinks.size())
     }
+
+    @Test
+    public void linkCheckerExampleParallel() {
+        def serialLinksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+        def serialBadLinks = new ArrayList<String>()
+        def parallelLinksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+        def parallelBadLinks = new ArrayList<String>()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1, failOnIgnoredHost: true, ignoreHostRegexs: [/www\.google\.com/])
+
+        settings.parallelism = 1
+        int serialTotal = LinkChecker.checkLinks(
+                null,
+                new File('./example/src/main/resources/html'),
+                settings,
+                serialLinksToSourceFiles,
+                serialBadLinks
+        )
+        settings.parallelism = 4
+        int parallelTotal = LinkChecker.checkLinks(
+                null,
+                new File('./example/src/main/resources/html'),
+                settings,
+                parallelLinksToSourceFiles,
+                parallelBadLinks
+        )
+
+        assertEquals("total", serialTotal, parallelTotal)
+        assertEquals("linksToSourceFiles", serialLinksToSourceFiles, parallelLinksToSourceFiles)
+        assertEquals("badLinks", serialBadLinks, parallelBadLinks)
+        assertEquals("badLinks", 2, parallelBadLinks.size())
+    }
+
+    @Test
+    public void linkCheckerExampleSpilled() {
+        def linksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+        def spilledLinksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1)
+
+        int total = LinkChecker.checkLinks(null, new File('./example/src/main/resources/html'), settings, linksToSourceFiles, null)
+        settings.maxLinkEdgesInMemory = 2
+        int spilledTotal = LinkChecker.checkLinks(null, new File('./example/src/main/resources/html'), settings, spilledLinksToSourceFiles, null)
+
+        assertEquals("total", total, spilledTotal)
+        assertEquals("linksToSourceFiles", linksToSourceFiles, spilledLinksToSourceFiles)
+        assertEquals("linksToSourceFiles", 9, spilledLinksToSourceFiles.size())
+    }
+
+    @Test
+    public void linkCheckerExampleIncremental() {
+        File dir = copyOfExample()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1, incrementalStateFile: new File(dir, 'state.txt'))
+
+        def badLinks = new ArrayList<String>()
+        int total = LinkChecker.checkLinks(null, new File(dir, 'html'), settings, null, badLinks)
+        assertEquals("total", 10, total)
+        assertEquals("badLinks", 1, badLinks.size())
+
+        new File(dir, 'images/Duke.png').delete()
+        def stabby = new File(dir, 'html/frames/Stabby.html')
+        stabby.text = stabby.text.replace('</body>', '<a href="Missing.html">Missing</a></body>')
+        badLinks.clear()
+        total = LinkChecker.checkLinks(null, new File(dir, 'html'), settings, null, badLinks)
+        assertEquals("total", 11, total)
+        assertEquals("badLinks", 3, badLinks.size())
+        assertTrue(badLinks.any { it.endsWith('Duke.png') })
+        assertTrue(badLinks.any { it.endsWith('Missing.html') })
+    }
+
+    static File siteWithAnchors() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '''<html><body>
+            <h1 id="intro">Intro</h1>
+            <a name="legacy"></a>
+            <a href="#intro">ok</a>
+            <a href="#missing">bad</a>
+            <a href="#top">top</a>
+            <a href="page.html#section">ok</a>
+            <a href="page.html#nope">bad</a>
+            <a href="page.html#caf%C3%A9">ok</a>
+            <a href="image.png#x">not html</a>
+        </body></html>'''
+        new File(dir, 'page.html').text = '''<html><body>
+            <h2 id="section">Section</h2>
+            <h2 id="caf&eacute;">Caf&eacute;</h2>
+            <a href="index.html#legacy">ok</a>
+            <a href="page.html#nope">bad</a>
+        </body></html>'''
+        new File(dir, 'image.png').bytes = [0x89, 0x50, 0x4e, 0x47] as byte[]
+        dir
+    }
+
+    @Test
+    public void linkCheckerAnchors() {
+        File dir = siteWithAnchors()
+        [LinkExtractor.JSOUP, LinkExtractor.STREAMING].each { engine ->
+            def linksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+            def badLinks = new ArrayList<String>()
+            def settings = new LinkCheckerSettings(linkExtractor: engine, failOnBadAnchors: true)
+
+            int total = LinkChecker.checkLinks(null, new File(dir, 'index.html'), settings, linksToSourceFiles, badLinks)
+
+            String index = new File(dir, 'index.html').canonicalPath
+            String page = new File(dir, 'page.html').canonicalPath
+            assertEquals(engine, 3, total)
+            assertEquals(engine, [index + '#missing', page + '#nope'], badLinks)
+            assertEquals(engine, [new File(dir, 'index.html'), new File(dir, 'page.html')] as Set, linksToSourceFiles.get(page + '#nope') as Set)
+        }
+    }
+
+    @Test
+    public void linkCheckerAnchorsNotFailing() {
+        def badLinks = new ArrayList<String>()
+        def settings = new LinkCheckerSettings(failOnBadAnchors: false)
+        LinkChecker.checkLinks(null, new File(siteWithAnchors(), 'index.html'), settings, null, badLinks)
+        assertEquals([], badLinks)
+    }
+
+    @Test
+    public void linkCheckerFollowsStylesheetsAndSrcsets() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'img').mkdir()
+        new File(dir, 'index.html').text = '''<html><head>
+            <link rel="stylesheet" href="style.css">
+        </head><body>
+            <img srcset="img/small.png 1x, img/large.png 2x">
+            <img src="data:image/png;base64,AAAA">
+        </body></html>'''
+        new File(dir, 'style.css').text = '''@import "missing.css";
+            body { background: url(img/small.png) }'''
+        new File(dir, 'img/small.png').bytes = [0x89, 0x50, 0x4e, 0x47] as byte[]
+
+        [LinkExtractor.JSOUP, LinkExtractor.STREAMING].each { engine ->
+            def linksToSourceFiles = HashMultimap.create() as Multimap<String, File>
+            def badLinks = new ArrayList<String>()
+            int total = LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(linkExtractor: engine), linksToSourceFiles, badLinks)
+
+            String large = new File(dir, 'img/large.png').canonicalPath
+            String missing = new File(dir, 'missing.css').canonicalPath
+            assertEquals(engine, 5, total)
+            assertEquals(engine, [large, missing], badLinks)
+            assertEquals(engine, [new File(dir, 'style.css')] as Set, linksToSourceFiles.get(missing) as Set)
+            assertEquals(engine, 2, linksToSourceFiles.get(new File(dir, 'img/small.png').canonicalPath).size())
+        }
+    }
+
+    @Test
+    public void linkCheckerIgnoresQueriesOfLocalFiles() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'fonts').mkdir()
+        new File(dir, 'index.html').text = '''<html><head>
+            <link rel="stylesheet" href="style.css?v=3">
+            <script src="app.js?v=1"></script>
+        </head><body>
+            <a href="?page=2">next</a>
+            <a href="gone.html?x=1#top">gone</a>
+        </body></html>'''
+        new File(dir, 'style.css').text = '''@font-face {
+            src: url(fonts/font.eot?#iefix) format("embedded-opentype"), url("fonts/font.woff?v=4.7.0") format("woff");
+        }'''
+        new File(dir, 'app.js').text = ''
+        new File(dir, 'fonts/font.eot').bytes = [0] as byte[]
+        new File(dir, 'fonts/font.woff').bytes = [0] as byte[]
+
+        [LinkExtractor.JSOUP, LinkExtractor.STREAMING].each { engine ->
+            def badLinks = new ArrayList<String>()
+            int total = LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(linkExtractor: engine), null, badLinks)
+
+            assertEquals(engine, 6, total)
+            assertEquals(engine, [new File(dir, 'gone.html').canonicalPath], badLinks)
+        }
+    }
+
+    @Test
+    public void linkCheckerTreatsProtocolRelativeLinksAsUrls() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '<html><head><script src="//localhost:8080/app.js"></script></head></html>'
+
+        def badLinks = new ArrayList<String>()
+        LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(), null, badLinks)
+        assertEquals(['http://localhost:8080/app.js'], badLinks)
+    }
+
+    @Test
+    public void linkCheckerExampleReplayed() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        recording.text = 'http://www.google.com/\tBAD_RESPONSE\t503\t-\n'
+        def badLinks = new ArrayList<String>()
+        def metrics = new CrawlMetrics()
+        def settings = new LinkCheckerSettings(failOnBadUrls: true, urlCheckMode: UrlRecording.REPLAY, urlRecordingFile: recording)
+
+        int total = LinkChecker.checkLinks(null, new File('./example/src/main/resources/html'), settings, null, badLinks, metrics)
+
+        assertEquals("total", 10, total)
+        assertTrue(badLinks.toString(), badLinks.contains('http://www.google.com'))
+        assertEquals(1L, metrics.toMap().urls.outcomes.BAD_RESPONSE)
+    }
+
+    @Test
+    public void linkCheckerExampleNotRecorded() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        recording.text = ''
+        def badLinks = new ArrayList<String>()
+        def metrics = new CrawlMetrics()
+        def settings = new LinkCheckerSettings(failOnBadUrls: true, urlCheckMode: UrlRecording.REPLAY, urlRecordingFile: recording)
+
+        LinkChecker.checkLinks(null, new File('./example/src/main/resources/html'), settings, null, badLinks, metrics)
+
+        assertTrue(badLinks.toString(), !badLinks.contains('http://www.google.com'))
+        assertEquals(1L, metrics.toMap().urls.outcomes.NOT_RECORDED)
+    }
+
+    @Test
+    public void linkCheckerStopsAfterMaxBadLinks() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '<html><body><a href="gone1.html">1</a><a href="p1.html">p1</a></body></html>'
+        new File(dir, 'p1.html').text = '<html><body><a href="gone2.html">2</a><a href="p2.html">p2</a></body></html>'
+        new File(dir, 'p2.html').text = '<html><body><a href="gone3.html">3</a></body></html>'
+
+        def badLinks = new ArrayList<String>()
+        int total = LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(), null, badLinks)
+        assertEquals("total", 6, total)
+        assertEquals("badLinks", 3, badLinks.size())
+
+        badLinks.clear()
+        def metrics = new CrawlMetrics()
+        total = LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(maxBadLinks: 1), null, badLinks, metrics)
+        assertEquals("total", 5, total)
+        assertEquals("badLinks", [new File(dir, 'gone1.html').canonicalPath], badLinks)
+        assertEquals(2L, metrics.toMap().files.parsed)
+    }
+
+    @Test
+    public void linkCheckerReportsLocalLinksFirstInPriorityOrder() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '<html><body><a href="http://localhost:8080/">local</a><a href="missing.html">missing</a></body></html>'
+        String missing = new File(dir, 'missing.html').canonicalPath
+
+        def badLinks = new ArrayList<String>()
+        LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(), null, badLinks)
+        assertEquals(['http://localhost:8080/', missing], badLinks)
+
+        badLinks.clear()
+        LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(crawlOrder: CrawlFrontier.PRIORITY_ORDER), null, badLinks)
+        assertEquals([missing, 'http://localhost:8080/'], badLinks)
+    }
+
+    @Test
+    public void linkCheckerChecksUrlsAsSoonAsTheyAreFoundInPriorityOrder() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '<html><body><a href="http://localhost:8080/">local</a><a href="p1.html">p1</a></body></html>'
+        new File(dir, 'p1.html').text = '<html><body><a href="p2.html">p2</a></body></html>'
+        new File(dir, 'p2.html').text = '<html><body></body></html>'
+
+        def badLinks = new ArrayList<String>()
+        def metrics = new CrawlMetrics()
+        def settings = new LinkCheckerSettings(crawlOrder: CrawlFrontier.PRIORITY_ORDER, maxBadLinks: 1)
+        LinkChecker.checkLinks(null, new File(dir, 'index.html'), settings, null, badLinks, metrics)
+
+        assertEquals(['http://localhost:8080/'], badLinks)
+        assertEquals(1L, metrics.toMap().files.parsed)
+    }
+
+    @Test
+    public void linkCheckerCountsBadAnchorsAsTheyAreFound() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'index.html').text = '<html><body><a href="#nope">nope</a><a href="p1.html">p1</a></body></html>'
+        new File(dir, 'p1.html').text = '<html><body><a href="p2.html">p2</a></body></html>'
+        new File(dir, 'p2.html').text = '<html><body></body></html>'
+
+        def badLinks = new ArrayList<String>()
+        def metrics = new CrawlMetrics()
+        LinkChecker.checkLinks(null, new File(dir, 'index.html'), new LinkCheckerSettings(maxBadLinks: 1, failOnBadAnchors: true), null, badLinks, metrics)
+
+        assertEquals([new File(dir, 'index.html').canonicalPath + '#nope'], badLinks)
+        assertEquals(1L, metrics.toMap().files.parsed)
+    }
 }
@@ -0,0 +1,54 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class LinkGraphTest {
+
+    static void addEdges(LinkGraph graph) {
+        graph.add('/site/a.html', new File('/site/index.html'))
+        graph.add('/site/b.html', new File('/site/index.html'))
+        graph.add('/site/a.html', new File('/site/b.html'))
+        graph.add('/site/a.html', new File('/site/index.html'))
+        graph.add('/site/c.html', new File('/site/a.html'))
+    }
+
+    @Test
+    public void sourcesComeBackDistinctAndInOrder() {
+        def graph = new LinkGraph()
+        addEdges(graph)
+
+        def sources = graph.sourcesOf(['/site/a.html', '/site/missing.html', '/site/c.html'])
+        assertEquals(['/site/a.html', '/site/c.html'], sources.keySet() as List)
+        assertEquals([new File('/site/index.html'), new File('/site/b.html')], sources['/site/a.html'] as List)
+        assertEquals([new File('/site/a.html')], sources['/site/c.html'] as List)
+        assertEquals(5, graph.size())
+        graph.close()
+    }
+
+    @Test
+    public void spilledEdgesAreTheSameAsEdgesInMemory() {
+        def inMemory = new LinkGraph()
+        def spilling = new LinkGraph(2)
+        addEdges(inMemory)
+        addEdges(spilling)
+        assertEquals(0, inMemory.spilled())
+        assertEquals(4, spilling.spilled())
+
+        def expected = []
+        inMemory.forEach { link, source -> expected << [link, source] }
+        def actual = []
+        spilling.forEach { link, source -> actual << [link, source] }
+        assertEquals(expected, actual)
+        assertEquals(inMemory.sourcesOf(['/site/a.html', '/site/b.html']), spilling.sourcesOf(['/site/a.html', '/site/b.html']))
+
+        File spillFile = spilling.spillFile
+        assertTrue(spillFile.exists())
+        spilling.close()
+        assertFalse(spillFile.exists())
+        inMemory.close()
+    }
+}
@@ -0,0 +1,78 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import com.google.common.hash.Hashing
+import org.junit.Test
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+
+class PageReaderTest {
+    static String sniff(byte[] bytes) {
+        PageReader.sniffCharset(ByteBuffer.wrap(bytes)).name()
+    }
+
+    static File write(byte[] bytes) {
+        File file = File.createTempFile('page', '.html')
+        file.deleteOnExit()
+        file.bytes = bytes
+        file
+    }
+
+    @Test
+    public void charsetsAreSniffed() {
+        assertEquals('UTF-8', sniff('<html><a href="x.html">'.getBytes('UTF-8')))
+        assertEquals('UTF-8', sniff([0xEF, 0xBB, 0xBF, 0x3C] as byte[]))
+        assertEquals('UTF-16BE', sniff([0xFE, 0xFF, 0x00, 0x3C] as byte[]))
+        assertEquals('UTF-16LE', sniff([0xFF, 0xFE, 0x3C, 0x00] as byte[]))
+        assertEquals('ISO-8859-1', sniff('<html><head><META CHARSET=iso-8859-1></head>'.getBytes('UTF-8')))
+        assertEquals('windows-1252', sniff('<meta http-equiv="Content-Type" content="text/html; charset=windows-1252">'.getBytes('UTF-8')))
+        assertEquals('UTF-8', sniff('<meta charset="no-such-charset">'.getBytes('UTF-8')))
+        assertEquals('UTF-8', sniff('<meta charset="utf-16">'.getBytes('UTF-8')))
+    }
+
+    @Test
+    public void textIsDecodedWithTheSniffedCharset() {
+        String html = '<meta charset="iso-8859-1"><a href="caf\u00e9.html">'
+        new PageReader(0).withCloseable { reader ->
+            assertEquals(html, reader.read('latin', write(html.getBytes('ISO-8859-1'))).text())
+
+            // the byte order mark is encoded as EF BB BF
+            assertEquals('<a href="caf\u00e9.html">', reader.read('bom', write('\uFEFF<a href="caf\u00e9.html">'.getBytes('UTF-8'))).text())
+        }
+    }
+
+    @Test
+    public void largeFilesAreMappedAndHashTheSame() {
+        byte[] bytes = ('<a href="page.html">' * 2000).getBytes(StandardCharsets.UTF_8)
+        File file = write(bytes)
+        String expectedHash = Hashing.murmur3_128().hashBytes(bytes).toString()
+        [new PageReader(0, 1024), new PageReader(0)].each { reader ->
+            reader.withCloseable {
+                def content = reader.read(file.path, file)
+                assertEquals(bytes.length, content.length())
+                assertEquals(expectedHash, content.hash())
+                assertEquals(new String(bytes, StandardCharsets.UTF_8), content.text())
+            }
+        }
+    }
+
+    @Test
+    public void filesAreReadAhead() {
+        File file = write('<a href="ahead.html">'.getBytes('UTF-8'))
+        new PageReader(1024).withCloseable { reader ->
+            reader.readAhead([file.path, 'http://example.com/']) { link -> link.startsWith('http') ? null : new File(link) }
+            long deadline = System.currentTimeMillis() + 5000
+            while (reader.readAhead[file.path].length == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10)
+            }
+            assertNotNull(reader.readAhead[file.path])
+            file.text = 'changed on disk'
+            assertEquals('<a href="ahead.html">', reader.read(file.path, file).text())
+            assertEquals(0L, reader.readAheadSize.get())
+            assertEquals('changed on disk', reader.read(file.path, file).text())
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.gradle.api.logging.LogLevel.*
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class ReportWriterTest {
+
+    static File logFile() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'linkchecker.txt')
+    }
+
+    @Test
+    public void theFileHasItsOwnLevel() {
+        File file = logFile()
+        def report = ReportWriter.open(file, INFO)
+        assertTrue(report.isEnabled(INFO))
+        report.log(DEBUG, 'file = {}', '/tmp/index.html')
+        report.log(INFO, 'Processing File: {}', '/tmp/index.html')
+        report.log(WARN, 'Got response code {} for URL: {}', 404, 'http://example.com/missing')
+        report.close()
+
+        assertEquals([
+                'Processing File: /tmp/index.html',
+                'Got response code 404 for URL: http://example.com/missing'
+        ], file.readLines())
+    }
+
+    @Test
+    public void aTrailingExceptionIsWrittenAfterTheMessage() {
+        File file = logFile()
+        def report = ReportWriter.open(file, DEBUG)
+        report.log(DEBUG, 'Source:', new IOException('refused'))
+        report.close()
+
+        assertEquals(['Source: java.io.IOException: refused'], file.readLines())
+    }
+
+    @Test
+    public void linesAreWrittenInOrderWhenTheQueueFillsUp() {
+        File file = logFile()
+        def report = ReportWriter.open(file, DEBUG)
+        (0..<20000).each { report.log(INFO, 'line {}', it) }
+        report.close()
+
+        assertEquals((0..<20000).collect { "line $it".toString() }, file.readLines())
+    }
+
+    @Test
+    public void aWrappedWriterIsWrittenToDirectly() {
+        def out = new StringWriter()
+        def report = ReportWriter.wrap(new PrintWriter(out))
+        report.log(ERROR, 'Bad URL: {}', 'http:/nope')
+        report.close()
+
+        assertEquals('Bad URL: http:/nope', out.toString().trim())
+    }
+
+    @Test
+    public void nothingIsEnabledWithoutAFileOrALogger() {
+        def report = ReportWriter.wrap(null)
+        assertFalse(report.isEnabled(DEBUG))
+        report.log(DEBUG, 'Ignoring: {}', 'mailto:someone@example.com')
+        report.close()
+    }
+
+    @Test
+    public void linesCanBeReadBeforeTheReportIsClosed() {
+        File file = logFile()
+        def report = ReportWriter.open(file, WARN)
+        report.log(WARN, 'Bad link: {}', '/tmp/missing.html')
+
+        long deadline = System.currentTimeMillis() + 5000
+        while (!(file.exists() && file.text.contains('Bad link: /tmp/missing.html')) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(['Bad link: /tmp/missing.html'], file.readLines())
+        report.close()
+    }
+}
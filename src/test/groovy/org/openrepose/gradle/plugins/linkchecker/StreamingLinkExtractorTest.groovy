@@ -0,0 +1,130 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import groovy.io.FileType
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class StreamingLinkExtractorTest {
+    static final Map<String, String> ELEMENTS_TO_ATTRIBUTES = [a: 'href', frame: 'src', img: 'src']
+
+    static List<String> extract(String engine, String html) {
+        extract(engine, html, new LinkRules(ELEMENTS_TO_ATTRIBUTES))
+    }
+
+    static List<String> extract(String engine, String html, LinkRules rules) {
+        def links = []
+        LinkExtractor.forEngine(engine, rules).extract(html, new LinkExtractor.LinkHandler() {
+            @Override
+            void link(String element, String attribute, String value) {
+                links << "$element/$attribute=$value".toString()
+            }
+
+            @Override
+            void anchor(String name) {
+                links << "#$name".toString()
+            }
+        })
+        links
+    }
+
+    static void assertSameAsJsoup(String html) {
+        assertEquals(html, extract(LinkExtractor.JSOUP, html), extract(LinkExtractor.STREAMING, html))
+    }
+
+    @Test
+    public void findsTheSameLinksAsJsoupInTheExample() {
+        new File('./example/src/main/resources/html').eachFileRecurse(FileType.FILES) { file ->
+            assertSameAsJsoup(file.text)
+        }
+    }
+
+    @Test
+    public void handlesQuotingCaseAndEntities() {
+        assertSameAsJsoup('''<html><body>
+            <A HREF=unquoted.html>1</A>
+            <a href='single.html?a=1&amp;b=2'>2</a>
+            <a title="x" href = "spaced.html" >3</a>
+            <IMG Src="image.png"/>
+            <a name="anchor">no href</a>
+            <a href="&#x2F;hex.html">4</a>
+        </body></html>''')
+    }
+
+    @Test
+    public void findsAnchors() {
+        assertSameAsJsoup('''<html><body>
+            <h1 ID="intro">Intro</h1>
+            <a name="legacy"></a>
+            <a id="both" name="named" href="#intro">both</a>
+            <div name="not-an-anchor" id='caf&eacute;'></div>
+            <p id="">empty</p>
+            <a id="first" id="second"></a>
+        </body></html>''')
+        assertEquals(['#intro', '#legacy', 'a/href=', '#both', '#named', 'a/href=#intro', '#caf\u00e9', '#first', 'a/href='],
+                extract(LinkExtractor.STREAMING, '''<h1 ID="intro">Intro</h1>
+                    <a name="legacy"></a>
+                    <a id="both" name="named" href="#intro">both</a>
+                    <div name="not-an-anchor" id='caf&eacute;'></div>
+                    <p id="">empty</p>
+                    <a id="first" id="second"></a>'''))
+    }
+
+    @Test
+    public void findsEveryDefaultRuleInOnePass() {
+        String html = '''<html><head>
+            <link rel="stylesheet" href="style.css">
+            <script src="app.js"></script>
+            <script>var inline = true;</script>
+        </head><body>
+            <iframe src="frame.html"></iframe>
+            <picture>
+                <source srcset="wide.webp 1200w, narrow.webp 600w" media="(min-width: 600px)">
+                <img src="fallback.png" SRCSET="small.png,big.png 2x">
+            </picture>
+            <map><area href="region.html" shape="rect" coords="0,0,1,1"></map>
+        </body></html>'''
+        def rules = new LinkRules(LinkRules.DEFAULTS)
+        assertEquals(extract(LinkExtractor.JSOUP, html, rules), extract(LinkExtractor.STREAMING, html, rules))
+        assertEquals(['link/href=style.css', 'script/src=app.js', 'script/src=', 'iframe/src=frame.html',
+                      'source/srcset=wide.webp', 'source/srcset=narrow.webp',
+                      'img/src=fallback.png', 'img/srcset=small.png,big.png',
+                      'area/href=region.html'],
+                extract(LinkExtractor.STREAMING, html, rules))
+    }
+
+    @Test
+    public void srcsetsAreSplitIntoUrls() {
+        assertEquals(['a.png', 'b.png', 'c.png'], LinkRules.srcsetUrls(' a.png 1x,  b.png 2x , c.png'))
+        assertEquals(['a.png', 'b.png'], LinkRules.srcsetUrls('a.png, b.png'))
+        assertEquals(['a,b.png'], LinkRules.srcsetUrls('a,b.png 100w'))
+        assertEquals([], LinkRules.srcsetUrls(' , '))
+    }
+
+    @Test
+    public void skipsCommentsAndRawText() {
+        assertSameAsJsoup('''<html><head>
+            <title><a href="title.html"></a></title>
+            <script>document.write('<a href="script.html">');</script>
+            <style>a[href="style.html"] { color: red }</style>
+        </head><body>
+            <!-- <a href="comment.html">commented out</a> -->
+            <a href="real.html">real</a>
+        </body></html>''')
+    }
+
+    @Test
+    public void skipsResourceHints() {
+        String html = '''<html><head>
+            <link rel="preconnect" href="https://fonts.gstatic.com">
+            <link REL="DNS-Prefetch" href="https://cdn.example.com">
+            <link rel="preconnect dns-prefetch" href="https://both.example.com">
+            <link rel="stylesheet" href="style.css">
+            <link rel="icon" href="favicon.ico">
+        </head></html>'''
+        def rules = new LinkRules(LinkRules.DEFAULTS)
+        [LinkExtractor.JSOUP, LinkExtractor.STREAMING].each { engine ->
+            assertEquals(engine, ['link/href=style.css', 'link/href=favicon.ico'], extract(engine, html, rules))
+        }
+    }
+}
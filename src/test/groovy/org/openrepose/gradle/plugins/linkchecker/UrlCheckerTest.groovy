@@ -0,0 +1,314 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.openrepose.gradle.plugins.linkchecker.UrlCheckResult.Outcome.*
+
+class UrlCheckerTest {
+    HttpServer server
+    ExecutorService serverExecutor
+    String baseUrl
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger maxInFlight = new AtomicInteger()
+    AtomicInteger requests = new AtomicInteger()
+    Map<String, AtomicInteger> hits = new java.util.concurrent.ConcurrentHashMap<>()
+
+    @Before
+    public void startServer() {
+        server = HttpServer.create(new InetSocketAddress('127.0.0.1', 0), 0)
+        server.createContext('/ok') { HttpExchange exchange ->
+            requests.incrementAndGet()
+            respond(exchange, 200)
+        }
+        server.createContext('/missing') { HttpExchange exchange -> respond(exchange, 404) }
+        server.createContext('/redirect') { HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            hits.computeIfAbsent(path) { new AtomicInteger() }.incrementAndGet()
+            Map<String, String> locations = [
+                    '/redirect/a'      : 'b',
+                    '/redirect/b'      : "http://127.0.0.1:${server.address.port}/ok".toString(),
+                    '/redirect/missing': '/missing',
+                    '/redirect/loop-a' : 'loop-b',
+                    '/redirect/loop-b' : 'loop-a',
+                    '/redirect/local'  : 'http://localhost:8080/',
+                    '/redirect/ignored': 'http://ignored.example.com/',
+            ]
+            exchange.responseHeaders.add('Location', locations[path])
+            respond(exchange, path == '/redirect/a' ? 301 : 302)
+        }
+        server.createContext('/slow') { HttpExchange exchange ->
+            int current = inFlight.incrementAndGet()
+            maxInFlight.accumulateAndGet(current, { a, b -> Math.max(a, b) })
+            Thread.sleep(100)
+            inFlight.decrementAndGet()
+            respond(exchange, 200)
+        }
+        serverExecutor = Executors.newCachedThreadPool()
+        server.executor = serverExecutor
+        server.start()
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0)
+        serverExecutor.shutdownNow()
+    }
+
+    static void respond(HttpExchange exchange, int status) {
+        exchange.sendResponseHeaders(status, -1)
+        exchange.close()
+    }
+
+    @Test
+    public void responsesAreClassified() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000)
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(OK, checker.submit("$baseUrl/ok").get().outcome)
+
+            def missing = checker.submit("$baseUrl/missing").get()
+            assertEquals(BAD_RESPONSE, missing.outcome)
+            assertEquals(404, missing.responseCode)
+        }
+    }
+
+    @Test
+    public void linksThatNeedNoNetworkAreJudgedImmediately() {
+        def settings = new LinkCheckerSettings(ignoreHostRegexs: [/.*\.example\.com/])
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(LOCALHOST, checker.submit('http://localhost:8080/').get().outcome)
+            assertEquals(IGNORED_HOST, checker.submit('https://docs.example.com/').get().outcome)
+            assertEquals(UNSUPPORTED_PROTOCOL, checker.submit('ftp://ftp.example.org/').get().outcome)
+        }
+    }
+
+    @Test
+    public void checksPerHostAreLimited() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 5000, maxConcurrentUrlChecks: 8, maxConcurrentUrlChecksPerHost: 2)
+        new UrlChecker(settings).withCloseable { checker ->
+            def results = (1..8).collect { checker.submit("$baseUrl/slow?page=$it") }
+            results.each { assertEquals(OK, it.get().outcome) }
+        }
+        assertTrue("max in flight was ${maxInFlight.get()}", maxInFlight.get() <= 2)
+    }
+
+    @Test
+    public void checksStopOnceTheBudgetIsSpent() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 5000, maxConcurrentUrlChecksPerHost: 1, urlCheckTimeBudget: 150)
+        new UrlChecker(settings).withCloseable { checker ->
+            def outcomes = (1..10).collect { checker.submit("$baseUrl/slow?page=$it") }*.get()*.outcome
+            assertTrue(outcomes.toString(), outcomes.contains(OVER_BUDGET))
+        }
+    }
+
+    @Test
+    public void checksCutShortByTheBudgetAreOverBudgetAndNotCached() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        File cacheFile = new File(dir, 'url-results.txt')
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 5000, urlCheckTimeBudget: 50, urlCacheFile: cacheFile)
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(OVER_BUDGET, checker.submit("$baseUrl/slow").get().outcome)
+        }
+        assertTrue(!cacheFile.exists() || cacheFile.readLines().isEmpty())
+    }
+
+    @Test
+    public void cachedResultsAreUsedByLaterRuns() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, urlCacheFile: new File(dir, 'url-results.txt'))
+
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(OK, checker.submit("$baseUrl/ok").get().outcome)
+        }
+        new UrlChecker(settings).withCloseable { checker ->
+            def result = checker.submit("$baseUrl/ok").get()
+            assertEquals(OK, result.outcome)
+            assertTrue(result.fromCache)
+        }
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    public void urlsAreNormalized() {
+        assertEquals('http://example.com/a?b=1', UrlChecker.normalize(new URL('http://Example.COM:80/a?b=1#c')).toString())
+        assertEquals('https://example.com/', UrlChecker.normalize(new URL('https://example.com:443')).toString())
+        assertEquals('https://example.com:8443/', UrlChecker.normalize(new URL('https://example.com:8443/#top')).toString())
+    }
+
+    @Test
+    public void equivalentLinksShareOneCheck() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000)
+        new UrlChecker(settings).withCloseable { checker ->
+            def first = checker.submit("$baseUrl/ok#intro")
+            def second = checker.submit("$baseUrl/ok#usage")
+            def third = checker.submit("$baseUrl/ok")
+            assertTrue(first.is(second))
+            assertTrue(first.is(third))
+            assertEquals(OK, third.get().outcome)
+        }
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    public void redirectsAreFollowedAndEachHopIsRequestedOnce() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000)
+        new UrlChecker(settings).withCloseable { checker ->
+            def viaA = checker.submit("$baseUrl/redirect/a").get()
+            def viaB = checker.submit("$baseUrl/redirect/b").get()
+            assertEquals(OK, viaA.outcome)
+            assertEquals("$baseUrl/ok".toString(), viaA.redirectTarget)
+            assertEquals(OK, viaB.outcome)
+
+            def missing = checker.submit("$baseUrl/redirect/missing").get()
+            assertEquals(BAD_RESPONSE, missing.outcome)
+            assertEquals(404, missing.responseCode)
+        }
+        assertEquals(1, hits['/redirect/a'].get())
+        assertEquals(1, hits['/redirect/b'].get())
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    public void redirectLoopsAreAProblem() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, maxRedirects: 3)
+        new UrlChecker(settings).withCloseable { checker ->
+            def loop = checker.submit("$baseUrl/redirect/loop-a").get()
+            assertEquals(PROBLEM, loop.outcome)
+            assertTrue(loop.exception instanceof ProtocolException)
+        }
+        assertEquals(1, hits['/redirect/loop-a'].get())
+        assertEquals(1, hits['/redirect/loop-b'].get())
+    }
+
+    @Test
+    public void redirectsToHostsThatAreNotCheckedAreJudgedByTheirTarget() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, ignoreHostRegexs: ['ignored\\.example\\.com'])
+        new UrlChecker(settings).withCloseable { checker ->
+            def local = checker.submit("$baseUrl/redirect/local").get()
+            assertEquals(LOCALHOST, local.outcome)
+            assertEquals('http://localhost:8080/', local.redirectTarget)
+            assertEquals(IGNORED_HOST, checker.submit("$baseUrl/redirect/ignored").get().outcome)
+        }
+    }
+
+    @Test
+    public void redirectsToHostsThatAreNotCheckedAreRecordedAndReplayed() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, ignoreHostRegexs: ['ignored\\.example\\.com'],
+                urlCheckMode: UrlRecording.RECORD, urlRecordingFile: recording)
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(LOCALHOST, checker.submit("$baseUrl/redirect/local").get().outcome)
+            assertEquals(IGNORED_HOST, checker.submit("$baseUrl/redirect/ignored").get().outcome)
+        }
+        assertEquals(2, recording.readLines().size())
+        server.stop(0)
+
+        settings.urlCheckMode = UrlRecording.REPLAY
+        new UrlChecker(settings).withCloseable { checker ->
+            def local = checker.submit("$baseUrl/redirect/local").get()
+            assertEquals(LOCALHOST, local.outcome)
+            assertEquals('http://localhost:8080/', local.redirectTarget)
+            assertEquals(IGNORED_HOST, checker.submit("$baseUrl/redirect/ignored").get().outcome)
+        }
+    }
+
+    @Test
+    public void redirectsAreNotFollowedIfTurnedOff() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, maxRedirects: 0)
+        new UrlChecker(settings).withCloseable { checker ->
+            def redirect = checker.submit("$baseUrl/redirect/a").get()
+            assertEquals(REDIRECT, redirect.outcome)
+            assertEquals(301, redirect.responseCode)
+        }
+        assertEquals(0, requests.get())
+    }
+
+    @Test
+    public void checksCanBeRecordedAndReplayedOffline() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, urlCheckMode: UrlRecording.RECORD, urlRecordingFile: recording)
+        new UrlChecker(settings).withCloseable { checker ->
+            assertEquals(OK, checker.submit("$baseUrl/ok").get().outcome)
+            assertEquals(OK, checker.submit("$baseUrl/redirect/a").get().outcome)
+            assertEquals(BAD_RESPONSE, checker.submit("$baseUrl/missing").get().outcome)
+            assertEquals(LOCALHOST, checker.submit('http://localhost:8080/').get().outcome)
+        }
+        assertEquals(3, recording.readLines().size())
+        server.stop(0)
+
+        settings.urlCheckMode = UrlRecording.REPLAY
+        new UrlChecker(settings).withCloseable { checker ->
+            def ok = checker.submit("$baseUrl/ok#intro").get()
+            assertEquals(OK, ok.outcome)
+            assertTrue(ok.fromCache)
+            def redirected = checker.submit("$baseUrl/redirect/a").get()
+            assertEquals(OK, redirected.outcome)
+            assertEquals("$baseUrl/ok".toString(), redirected.redirectTarget)
+            assertEquals(404, checker.submit("$baseUrl/missing").get().responseCode)
+            assertEquals(NOT_RECORDED, checker.submit("$baseUrl/slow").get().outcome)
+        }
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    public void recordingIsLeftAsItWasIfDiscarded() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, urlCheckMode: UrlRecording.RECORD, urlRecordingFile: recording)
+        new UrlChecker(settings).withCloseable { checker ->
+            checker.submit("$baseUrl/ok").get()
+            checker.submit("$baseUrl/missing").get()
+        }
+        List<String> recorded = recording.readLines()
+
+        new UrlChecker(settings).withCloseable { checker ->
+            checker.submit("$baseUrl/ok").get()
+            checker.discardRecording()
+        }
+        assertEquals(recorded, recording.readLines())
+    }
+
+    @Test
+    public void urlsOverBudgetKeepWhatWasRecordedBefore() {
+        File recording = new File(File.createTempDir(), 'linkchecker-urls.txt')
+        recording.parentFile.deleteOnExit()
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 1000, urlCheckMode: UrlRecording.RECORD, urlRecordingFile: recording)
+        new UrlChecker(settings).withCloseable { checker ->
+            checker.submit("$baseUrl/ok").get()
+        }
+        List<String> recorded = recording.readLines()
+
+        settings.urlCheckTimeBudget = 1
+        new UrlChecker(settings).withCloseable { checker ->
+            Thread.sleep(10)
+            assertEquals(OVER_BUDGET, checker.submit("$baseUrl/ok").get().outcome)
+            assertEquals(OVER_BUDGET, checker.submit("$baseUrl/missing").get().outcome)
+        }
+        assertEquals(recorded, recording.readLines())
+    }
+
+    @Test
+    public void checksThatHaveNotStartedAreAbandonedOnClose() {
+        def settings = new LinkCheckerSettings(httpURLConnectionTimeout: 5000, maxConcurrentUrlChecksPerHost: 1)
+        def results
+        new UrlChecker(settings).withCloseable { checker ->
+            results = (1..4).collect { checker.submit("$baseUrl/slow?page=$it") }
+        }
+        assertEquals(OK, results[0].get().outcome)
+        results.drop(1).each { assertTrue(it.toString(), it.isCompletedExceptionally()) }
+    }
+}
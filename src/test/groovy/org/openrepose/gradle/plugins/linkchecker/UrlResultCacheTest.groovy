@@ -0,0 +1,85 @@
+package org.openrepose.gradle.plugins.linkchecker
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNotNull
+import static org.junit.Assert.assertNull
+import static org.junit.Assert.assertTrue
+import static org.openrepose.gradle.plugins.linkchecker.UrlCheckResult.Outcome.*
+
+class UrlResultCacheTest {
+    static final long HOUR = 60 * 60 * 1000
+
+    static File cacheFile() {
+        File dir = File.createTempDir()
+        dir.deleteOnExit()
+        new File(dir, 'url-results.txt')
+    }
+
+    @Test
+    public void resultsSurviveASaveAndLoad() {
+        File file = cacheFile()
+        def cache = new UrlResultCache(file, HOUR, HOUR, 10)
+        cache.put('http://example.com/', new UrlCheckResult(OK, 200, null, 'https://example.com/', false))
+        cache.put('http://example.com/missing', new UrlCheckResult(BAD_RESPONSE, 404, null))
+        cache.save()
+
+        def settings = new LinkCheckerSettings(urlCacheFile: file, urlCacheSuccessTtl: HOUR, urlCacheFailureTtl: HOUR)
+        def loaded = UrlResultCache.load(settings)
+        def good = loaded.get('http://example.com/')
+        assertEquals(OK, good.outcome)
+        assertEquals(200, good.responseCode)
+        assertEquals('https://example.com/', good.redirectTarget)
+        assertTrue(good.fromCache)
+        assertEquals(BAD_RESPONSE, loaded.get('http://example.com/missing').outcome)
+    }
+
+    @Test
+    public void failuresExpireSeparatelyFromSuccesses() {
+        def cache = new UrlResultCache(cacheFile(), 2 * HOUR, HOUR, 10)
+        long ninetyMinutesAgo = System.currentTimeMillis() - 90 * 60 * 1000
+        cache.put('http://example.com/', new UrlCheckResult(OK, 200, null), ninetyMinutesAgo)
+        cache.put('http://example.com/missing', new UrlCheckResult(BAD_RESPONSE, 404, null), ninetyMinutesAgo)
+
+        assertNotNull(cache.get('http://example.com/'))
+        assertNull(cache.get('http://example.com/missing'))
+    }
+
+    @Test
+    public void onlyTheMostRecentEntriesAreSaved() {
+        File file = cacheFile()
+        def cache = new UrlResultCache(file, HOUR, HOUR, 2)
+        long now = System.currentTimeMillis()
+        cache.put('http://example.com/1', new UrlCheckResult(OK, 200, null), now - 3000)
+        cache.put('http://example.com/2', new UrlCheckResult(OK, 200, null), now - 2000)
+        cache.put('http://example.com/3', new UrlCheckResult(OK, 200, null), now - 1000)
+        cache.save()
+
+        def loaded = UrlResultCache.load(new LinkCheckerSettings(urlCacheFile: file, urlCacheSuccessTtl: HOUR, urlCacheMaxEntries: 2))
+        assertEquals(2, loaded.size())
+        assertNull(loaded.get('http://example.com/1'))
+        assertNotNull(loaded.get('http://example.com/3'))
+    }
+
+    @Test
+    public void cachesSharingAFileMergeTheirResults() {
+        File file = cacheFile()
+        def settings = new LinkCheckerSettings(urlCacheFile: file, urlCacheSuccessTtl: HOUR, urlCacheFailureTtl: HOUR)
+        def first = UrlResultCache.load(settings)
+        def second = UrlResultCache.load(settings)
+        long now = System.currentTimeMillis()
+        first.put('http://example.com/first', new UrlCheckResult(OK, 200, null), now)
+        first.put('http://example.com/both', new UrlCheckResult(OK, 200, null), now - 1000)
+        second.put('http://example.com/second', new UrlCheckResult(OK, 200, null), now)
+        second.put('http://example.com/both', new UrlCheckResult(BAD_RESPONSE, 404, null), now)
+        second.save()
+        first.save()
+
+        def loaded = UrlResultCache.load(settings)
+        assertEquals(3, loaded.size())
+        assertNotNull(loaded.get('http://example.com/first'))
+        assertNotNull(loaded.get('http://example.com/second'))
+        assertEquals(BAD_RESPONSE, loaded.get('http://example.com/both').outcome)
+    }
+}